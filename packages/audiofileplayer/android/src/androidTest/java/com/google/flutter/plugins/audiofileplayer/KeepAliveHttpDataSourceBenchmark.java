@@ -0,0 +1,175 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import android.net.Uri;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares {@link KeepAliveHttpDataSource} with ExoPlayer's {@link DefaultHttpDataSource} against a
+ * local HTTP server which serves byte ranges, on the time to first audio (the open and first read
+ * of a short clip by a new data source, as for a newly loaded player) and the time to seek (the
+ * close of the range being played, then the open and first read of another, as on a seek).
+ *
+ * <p>Asserts only that both read the same bytes; times are logged, since they vary with the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class KeepAliveHttpDataSourceBenchmark {
+  private static final String TAG = KeepAliveHttpDataSourceBenchmark.class.getSimpleName();
+  private static final int RESOURCE_LENGTH = 2 * 1024 * 1024;
+  // Short enough for the keep-alive source to drain what is left of it on close.
+  private static final int CLIP_LENGTH = 32 * 1024;
+  private static final int RANGE_LENGTH = 32 * 1024;
+  private static final int FIRST_READ_LENGTH = 4 * 1024;
+  private static final int ITERATIONS = 200;
+  private static final String USER_AGENT = "test";
+
+  private final MockWebServer server = new MockWebServer();
+  private final byte[] resource = new byte[RESOURCE_LENGTH];
+  private Uri clipUri;
+  private Uri resourceUri;
+
+  @Before
+  public void setUp() throws IOException {
+    new Random(0).nextBytes(resource);
+    server.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            int length = request.getPath().equals("/clip.mp3") ? CLIP_LENGTH : RESOURCE_LENGTH;
+            return rangeResponse(length, request.getHeader("Range"));
+          }
+        });
+    server.start();
+    clipUri = Uri.parse(server.url("/clip.mp3").toString());
+    resourceUri = Uri.parse(server.url("/audio.mp3").toString());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void firstAudio_readsSameBytesAndLogsTimes() throws IOException {
+    byte[] defaultData = new byte[FIRST_READ_LENGTH];
+    byte[] keepAliveData = new byte[FIRST_READ_LENGTH];
+    firstAudio(new DefaultHttpDataSource(USER_AGENT), defaultData);
+    firstAudio(new KeepAliveHttpDataSource(USER_AGENT), keepAliveData);
+    assertArrayEquals(defaultData, keepAliveData);
+
+    long defaultNs = 0;
+    long keepAliveNs = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      defaultNs += firstAudio(new DefaultHttpDataSource(USER_AGENT), defaultData);
+      keepAliveNs += firstAudio(new KeepAliveHttpDataSource(USER_AGENT), keepAliveData);
+    }
+    report("first audio", defaultNs, keepAliveNs);
+  }
+
+  @Test
+  public void seek_readsSameBytesAndLogsTimes() throws IOException {
+    byte[] defaultData = new byte[ITERATIONS * FIRST_READ_LENGTH];
+    byte[] keepAliveData = new byte[ITERATIONS * FIRST_READ_LENGTH];
+    long defaultNs = seeks(new DefaultHttpDataSource(USER_AGENT), defaultData);
+    long keepAliveNs = seeks(new KeepAliveHttpDataSource(USER_AGENT), keepAliveData);
+    assertArrayEquals(defaultData, keepAliveData);
+    report("seek", defaultNs, keepAliveNs);
+  }
+
+  /**
+   * Opens the clip and reads its first bytes into {@code data}, then reads the rest and closes.
+   *
+   * @return the time taken by the open and first read
+   */
+  private long firstAudio(DataSource dataSource, byte[] data) throws IOException {
+    long startNs = System.nanoTime();
+    dataSource.open(new DataSpec(clipUri, 0, C.LENGTH_UNSET, null));
+    try {
+      readFully(dataSource, data, 0, FIRST_READ_LENGTH);
+      long elapsedNs = System.nanoTime() - startNs;
+      int restLength = CLIP_LENGTH - FIRST_READ_LENGTH;
+      readFully(dataSource, new byte[restLength], 0, restLength);
+      return elapsedNs;
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  /**
+   * Opens a range at each of a fixed sequence of positions, reading the first bytes of each into
+   * {@code data} and closing with the rest unread, as playback which is seeked elsewhere does.
+   *
+   * @return the total time taken by the closes, opens and first reads
+   */
+  private long seeks(DataSource dataSource, byte[] data) throws IOException {
+    Random random = new Random(1);
+    dataSource.open(new DataSpec(resourceUri, 0, RANGE_LENGTH, null));
+    long totalNs = 0;
+    try {
+      for (int i = 0; i < ITERATIONS; i++) {
+        long position = random.nextInt(RESOURCE_LENGTH - RANGE_LENGTH);
+        long startNs = System.nanoTime();
+        dataSource.close();
+        dataSource.open(new DataSpec(resourceUri, position, RANGE_LENGTH, null));
+        readFully(dataSource, data, i * FIRST_READ_LENGTH, FIRST_READ_LENGTH);
+        totalNs += System.nanoTime() - startNs;
+      }
+    } finally {
+      dataSource.close();
+    }
+    return totalNs;
+  }
+
+  private static void readFully(DataSource dataSource, byte[] data, int offset, int length)
+      throws IOException {
+    int end = offset + length;
+    while (offset < end) {
+      int bytesRead = dataSource.read(data, offset, end - offset);
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        throw new EOFException();
+      }
+      offset += bytesRead;
+    }
+  }
+
+  /** Serves the requested byte range ("bytes=a-" or "bytes=a-b") of the first {@code length}. */
+  private MockResponse rangeResponse(int length, @Nullable String range) {
+    if (range == null || !range.startsWith("bytes=")) {
+      return new MockResponse().setBody(new Buffer().write(resource, 0, length));
+    }
+    String[] bounds = range.substring("bytes=".length()).split("-", -1);
+    int start = Integer.parseInt(bounds[0]);
+    int end = bounds[1].isEmpty() ? length - 1 : Integer.parseInt(bounds[1]);
+    return new MockResponse()
+        .setResponseCode(206)
+        .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length)
+        .setBody(new Buffer().write(resource, start, end - start + 1));
+  }
+
+  private static void report(String operation, long defaultNs, long keepAliveNs) {
+    Log.i(
+        TAG,
+        String.format(
+            "%s: DefaultHttpDataSource %d us, KeepAliveHttpDataSource %d us",
+            operation, defaultNs / ITERATIONS / 1000, keepAliveNs / ITERATIONS / 1000));
+  }
+}
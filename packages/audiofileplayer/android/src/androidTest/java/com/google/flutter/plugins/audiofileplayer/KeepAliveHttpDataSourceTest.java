@@ -0,0 +1,159 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource.HttpDataSourceException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests {@link KeepAliveHttpDataSource} against a local HTTP server, which numbers the requests
+ * made on each connection, so that connection reuse can be checked.
+ */
+@RunWith(AndroidJUnit4.class)
+public class KeepAliveHttpDataSourceTest {
+  private static final int RESOURCE_LENGTH = 1000;
+
+  private final MockWebServer server = new MockWebServer();
+  private final KeepAliveHttpDataSource dataSource = new KeepAliveHttpDataSource("test");
+  private final byte[] resource = new byte[RESOURCE_LENGTH];
+  private Uri uri;
+
+  @Before
+  public void setUp() throws IOException {
+    for (int i = 0; i < resource.length; i++) {
+      resource[i] = (byte) i;
+    }
+    server.start();
+    uri = Uri.parse(server.url("/audio.mp3").toString());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void rangeRequests_readRangesOverOneConnection() throws Exception {
+    server.enqueue(partialResponse(0, 100));
+    server.enqueue(partialResponse(100, 100));
+
+    assertEquals(100, dataSource.open(new DataSpec(uri, 0, 100, null)));
+    assertArrayEquals(Arrays.copyOfRange(resource, 0, 100), readToEnd());
+    dataSource.close();
+    assertEquals(100, dataSource.open(new DataSpec(uri, 100, 100, null)));
+    assertArrayEquals(Arrays.copyOfRange(resource, 100, 200), readToEnd());
+    dataSource.close();
+
+    RecordedRequest first = server.takeRequest();
+    RecordedRequest second = server.takeRequest();
+    assertEquals("bytes=0-99", first.getHeader("Range"));
+    assertEquals("bytes=100-199", second.getHeader("Range"));
+    assertEquals(0, first.getSequenceNumber());
+    assertEquals(1, second.getSequenceNumber());
+  }
+
+  @Test
+  public void closeWithLittleRemaining_drainsAndReusesConnection() throws Exception {
+    server.enqueue(fullResponse(resource));
+    server.enqueue(fullResponse(resource));
+
+    assertEquals(RESOURCE_LENGTH, dataSource.open(new DataSpec(uri, 0, C.LENGTH_UNSET, null)));
+    dataSource.read(new byte[10], 0, 10);
+    dataSource.close();
+    dataSource.open(new DataSpec(uri, 0, C.LENGTH_UNSET, null));
+    dataSource.close();
+
+    assertEquals(0, server.takeRequest().getSequenceNumber());
+    assertEquals(1, server.takeRequest().getSequenceNumber());
+  }
+
+  @Test
+  public void closeWithMuchRemaining_disconnects() throws Exception {
+    byte[] largeResource = new byte[1024 * 1024];
+    server.enqueue(fullResponse(largeResource));
+    server.enqueue(fullResponse(resource));
+
+    assertEquals(
+        largeResource.length, dataSource.open(new DataSpec(uri, 0, C.LENGTH_UNSET, null)));
+    dataSource.read(new byte[10], 0, 10);
+    dataSource.close();
+    dataSource.open(new DataSpec(uri, 0, C.LENGTH_UNSET, null));
+    dataSource.close();
+
+    assertEquals(0, server.takeRequest().getSequenceNumber());
+    // A new connection.
+    assertEquals(0, server.takeRequest().getSequenceNumber());
+  }
+
+  @Test
+  public void rangeNotSatisfiableAtEnd_opensEmpty() throws Exception {
+    server.enqueue(rangeNotSatisfiableResponse());
+    server.enqueue(fullResponse(resource));
+
+    assertEquals(0, dataSource.open(new DataSpec(uri, RESOURCE_LENGTH, C.LENGTH_UNSET, null)));
+    assertEquals(C.RESULT_END_OF_INPUT, dataSource.read(new byte[10], 0, 10));
+    dataSource.close();
+    dataSource.open(new DataSpec(uri, 0, C.LENGTH_UNSET, null));
+    dataSource.close();
+
+    assertEquals("bytes=" + RESOURCE_LENGTH + "-", server.takeRequest().getHeader("Range"));
+    assertEquals(1, server.takeRequest().getSequenceNumber());
+  }
+
+  @Test
+  public void rangeNotSatisfiableBeforeEnd_throws() {
+    server.enqueue(rangeNotSatisfiableResponse());
+
+    try {
+      dataSource.open(new DataSpec(uri, RESOURCE_LENGTH / 2, C.LENGTH_UNSET, null));
+      fail("Expected an HttpDataSourceException");
+    } catch (HttpDataSourceException e) {
+      assertEquals(HttpDataSourceException.TYPE_OPEN, e.type);
+    }
+  }
+
+  private MockResponse partialResponse(int position, int length) {
+    return new MockResponse()
+        .setResponseCode(206)
+        .setHeader(
+            "Content-Range",
+            "bytes " + position + "-" + (position + length - 1) + "/" + RESOURCE_LENGTH)
+        .setBody(new Buffer().write(resource, position, length));
+  }
+
+  private static MockResponse fullResponse(byte[] body) {
+    return new MockResponse().setBody(new Buffer().write(body));
+  }
+
+  private static MockResponse rangeNotSatisfiableResponse() {
+    return new MockResponse()
+        .setResponseCode(416)
+        .setHeader("Content-Range", "bytes */" + RESOURCE_LENGTH);
+  }
+
+  private byte[] readToEnd() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[64];
+    int bytesRead;
+    while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+      output.write(buffer, 0, bytesRead);
+    }
+    return output.toByteArray();
+  }
+}
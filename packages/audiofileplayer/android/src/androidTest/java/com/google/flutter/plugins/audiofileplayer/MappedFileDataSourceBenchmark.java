@@ -0,0 +1,138 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import android.net.Uri;
+import android.util.Log;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares {@link MappedFileDataSource} with ExoPlayer's {@link FileDataSource}, reading a file
+ * sequentially and with a seek (a close and reopen) before each chunk.
+ *
+ * <p>Asserts only that both read the same bytes; times are logged, since they vary with the device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MappedFileDataSourceBenchmark {
+  private static final String TAG = MappedFileDataSourceBenchmark.class.getSimpleName();
+  private static final int FILE_LENGTH = 4 * 1024 * 1024;
+  private static final int CHUNK_LENGTH = 16 * 1024;
+  private static final int SEEK_COUNT = 500;
+  private static final int ITERATIONS = 5;
+
+  private File file;
+  private Uri uri;
+
+  @Before
+  public void setUp() throws IOException {
+    byte[] contents = new byte[FILE_LENGTH];
+    new Random(0).nextBytes(contents);
+    File cacheDir = InstrumentationRegistry.getInstrumentation().getContext().getCacheDir();
+    file = File.createTempFile("audio", ".bin", cacheDir);
+    try (FileOutputStream output = new FileOutputStream(file)) {
+      output.write(contents);
+    }
+    uri = Uri.fromFile(file);
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Test
+  public void sequentialRead_readsSameBytesAndLogsTimes() throws IOException {
+    DataSource.Factory mappedFactory = MappedFileDataSource.factory(file.getPath());
+    assertArrayEquals(
+        readSequentially(new FileDataSource()), readSequentially(mappedFactory.createDataSource()));
+
+    long fileNs = 0;
+    long mappedNs = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      long startNs = System.nanoTime();
+      readSequentially(new FileDataSource());
+      fileNs += System.nanoTime() - startNs;
+      startNs = System.nanoTime();
+      readSequentially(mappedFactory.createDataSource());
+      mappedNs += System.nanoTime() - startNs;
+    }
+    report("sequential", fileNs, mappedNs);
+  }
+
+  @Test
+  public void seekingRead_readsSameBytesAndLogsTimes() throws IOException {
+    DataSource.Factory mappedFactory = MappedFileDataSource.factory(file.getPath());
+    assertArrayEquals(
+        readWithSeeks(new FileDataSource()), readWithSeeks(mappedFactory.createDataSource()));
+
+    long fileNs = 0;
+    long mappedNs = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      long startNs = System.nanoTime();
+      readWithSeeks(new FileDataSource());
+      fileNs += System.nanoTime() - startNs;
+      startNs = System.nanoTime();
+      readWithSeeks(mappedFactory.createDataSource());
+      mappedNs += System.nanoTime() - startNs;
+    }
+    report("seeking", fileNs, mappedNs);
+  }
+
+  /** Reads the whole file in chunks, from one open. */
+  private byte[] readSequentially(DataSource dataSource) throws IOException {
+    byte[] contents = new byte[FILE_LENGTH];
+    dataSource.open(new DataSpec(uri));
+    try {
+      int offset = 0;
+      int bytesRead;
+      while (offset < FILE_LENGTH
+          && (bytesRead = dataSource.read(contents, offset, CHUNK_LENGTH))
+              != C.RESULT_END_OF_INPUT) {
+        offset += bytesRead;
+      }
+    } finally {
+      dataSource.close();
+    }
+    return contents;
+  }
+
+  /** Reads one chunk at each of a fixed sequence of positions, reopening for each. */
+  private byte[] readWithSeeks(DataSource dataSource) throws IOException {
+    Random random = new Random(1);
+    byte[] chunks = new byte[SEEK_COUNT * CHUNK_LENGTH];
+    for (int i = 0; i < SEEK_COUNT; i++) {
+      long position = random.nextInt(FILE_LENGTH - CHUNK_LENGTH);
+      dataSource.open(new DataSpec(uri, position, CHUNK_LENGTH, null));
+      try {
+        int offset = 0;
+        while (offset < CHUNK_LENGTH) {
+          offset += dataSource.read(chunks, i * CHUNK_LENGTH + offset, CHUNK_LENGTH - offset);
+        }
+      } finally {
+        dataSource.close();
+      }
+    }
+    return chunks;
+  }
+
+  private static void report(String pattern, long fileNs, long mappedNs) {
+    Log.i(
+        TAG,
+        String.format(
+            "%s: FileDataSource %d us, MappedFileDataSource %d us",
+            pattern, fileNs / ITERATIONS / 1000, mappedNs / ITERATIONS / 1000));
+  }
+}
@@ -0,0 +1,87 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import static org.junit.Assert.assertEquals;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import io.flutter.plugin.common.MethodCall;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that with a dedicated playback thread, player calls complete while the main thread is
+ * busy, and that results reach callers on threads without a looper.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PlaybackThreadTest {
+  private PluginHarness harness;
+
+  @Before
+  public void setUp() {
+    harness = new PluginHarness();
+  }
+
+  @After
+  public void tearDown() {
+    harness.release();
+  }
+
+  @Test
+  public void playerCallsCompleteWhileMainThreadIsBlocked() throws InterruptedException {
+    Map<String, Object> threadArguments = new HashMap<>();
+    threadArguments.put("dedicatedPlaybackThread", true);
+    harness.call("configurePlaybackThread", threadArguments);
+
+    CountDownLatch unblockMainThread = new CountDownLatch(1);
+    new Handler(Looper.getMainLooper())
+        .post(
+            () -> {
+              try {
+                unblockMainThread.await(PluginHarness.TIMEOUT_SECONDS * 4, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+    try {
+      Map<String, Object> loadArguments = new HashMap<>();
+      loadArguments.put("audioId", "a");
+      loadArguments.put("audioBytes", PluginHarness.silentWav(2));
+      harness.call("load", loadArguments);
+
+      Map<String, Object> playArguments = new HashMap<>();
+      playArguments.put("audioId", "a");
+      playArguments.put("playFromStart", true);
+      harness.call("play", playArguments);
+
+      // Replies only once the player has processed the seek.
+      Map<String, Object> seekArguments = new HashMap<>();
+      seekArguments.put("audioId", "a");
+      seekArguments.put("position_seconds", 1.0);
+      harness.call("seek", seekArguments);
+    } finally {
+      unblockMainThread.countDown();
+    }
+  }
+
+  @Test
+  public void resultOfCallFromThreadWithoutLooper_isDeliveredOnMainThread()
+      throws InterruptedException {
+    PluginHarness.RecordingResult result = new PluginHarness.RecordingResult();
+    Thread thread =
+        new Thread(
+            () ->
+                harness.plugin.onMethodCall(new MethodCall("getPlayerPoolStats", null), result));
+    thread.start();
+    thread.join();
+
+    result.await("getPlayerPoolStats");
+    assertEquals(Looper.getMainLooper(), result.looper.get());
+  }
+}
@@ -0,0 +1,94 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import static org.junit.Assert.assertEquals;
+
+import android.os.SystemClock;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that once more players hold an underlying ExoPlayer than allowed, idle players are evicted
+ * least recently used first, playing players are kept, and evicted players are prepared again on
+ * their next play.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PlayerEvictionTest {
+  private PluginHarness harness;
+
+  @Before
+  public void setUp() {
+    harness = new PluginHarness();
+  }
+
+  @After
+  public void tearDown() {
+    harness.release();
+  }
+
+  @Test
+  public void evictsIdlePlayersLeastRecentlyUsedFirst() throws InterruptedException {
+    load("a");
+    load("b");
+    load("c");
+    // Use times have millisecond resolution; a is the least recently used, but playing.
+    play("a");
+    SystemClock.sleep(10);
+    seek("b");
+    SystemClock.sleep(10);
+    seek("c");
+
+    configureEviction(2);
+
+    assertEquals(Collections.singletonList("b"), harness.sentAudioIds("onEvicted"));
+
+    // Playing b prepares it again, which leaves c as the least recently used idle player.
+    play("b");
+
+    assertEquals(Arrays.asList("b", "c"), harness.sentAudioIds("onEvicted"));
+  }
+
+  @Test
+  public void keepsPlayersWithinLimit() throws InterruptedException {
+    load("a");
+    load("b");
+
+    configureEviction(2);
+
+    assertEquals(Collections.emptyList(), harness.sentAudioIds("onEvicted"));
+  }
+
+  private void load(String audioId) throws InterruptedException {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("audioId", audioId);
+    arguments.put("audioBytes", PluginHarness.silentWav(10));
+    harness.call("load", arguments);
+  }
+
+  private void play(String audioId) throws InterruptedException {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("audioId", audioId);
+    arguments.put("playFromStart", false);
+    harness.call("play", arguments);
+  }
+
+  /** Seeks, which counts as a use of the player; replies once the seek has been processed. */
+  private void seek(String audioId) throws InterruptedException {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("audioId", audioId);
+    arguments.put("position_seconds", 1.0);
+    harness.call("seek", arguments);
+  }
+
+  private void configureEviction(int maxLivePlayers) throws InterruptedException {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("maxLivePlayers", maxLivePlayers);
+    harness.call("configurePlayerEviction", arguments);
+  }
+}
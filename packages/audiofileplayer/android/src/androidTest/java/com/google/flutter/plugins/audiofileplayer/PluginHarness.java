@@ -0,0 +1,144 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import androidx.test.platform.app.InstrumentationRegistry;
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel.Result;
+import io.flutter.plugin.common.StandardMethodCodec;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs an {@link AudiofileplayerPlugin} without a Flutter engine, making method calls from a
+ * thread of its own, as the platform channel would, and recording the calls it makes back.
+ */
+final class PluginHarness {
+  static final long TIMEOUT_SECONDS = 5;
+  private static final String CHANNEL = "audiofileplayer";
+
+  /** Records the calls the plugin makes on its method channel, and drops all other messages. */
+  private final class RecordingBinaryMessenger implements BinaryMessenger {
+    @Override
+    public void send(String channel, @Nullable ByteBuffer message) {
+      send(channel, message, null);
+    }
+
+    @Override
+    public void send(String channel, @Nullable ByteBuffer message, @Nullable BinaryReply callback) {
+      if (!CHANNEL.equals(channel) || message == null) {
+        return;
+      }
+      // Sent messages are positioned at their end, as the engine expects.
+      ByteBuffer encoded = message.duplicate();
+      encoded.flip();
+      sentCalls.add(StandardMethodCodec.INSTANCE.decodeMethodCall(encoded));
+    }
+
+    @Override
+    public void setMessageHandler(String channel, @Nullable BinaryMessageHandler handler) {}
+  }
+
+  /** Records the outcome of a call, and the looper it was delivered on. */
+  static final class RecordingResult implements Result {
+    final CountDownLatch done = new CountDownLatch(1);
+    final AtomicReference<String> error = new AtomicReference<>();
+    final AtomicReference<Looper> looper = new AtomicReference<>();
+
+    @Override
+    public void success(Object result) {
+      looper.set(Looper.myLooper());
+      done.countDown();
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+      error.set(errorCode + ": " + errorMessage);
+      looper.set(Looper.myLooper());
+      done.countDown();
+    }
+
+    @Override
+    public void notImplemented() {
+      error(null, "not implemented", null);
+    }
+
+    void await(String method) throws InterruptedException {
+      assertTrue(method + " timed out", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+      if (error.get() != null) {
+        fail(method + " failed: " + error.get());
+      }
+    }
+  }
+
+  final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+  final AudiofileplayerPlugin plugin = new AudiofileplayerPlugin();
+  // Calls the plugin has made on its method channel, in order; only touched on the main thread.
+  private final List<MethodCall> sentCalls = new ArrayList<>();
+  private final HandlerThread callerThread = new HandlerThread("caller");
+  private final Handler callerHandler;
+
+  PluginHarness() {
+    InstrumentationRegistry.getInstrumentation()
+        .runOnMainSync(() -> plugin.initInstance(new RecordingBinaryMessenger(), context));
+    callerThread.start();
+    callerHandler = new Handler(callerThread.getLooper());
+  }
+
+  void release() {
+    InstrumentationRegistry.getInstrumentation().runOnMainSync(plugin::releaseInstance);
+    callerThread.quitSafely();
+  }
+
+  /** Makes a call on the caller thread and waits for its result there. */
+  void call(String method, @Nullable Map<String, Object> arguments) throws InterruptedException {
+    RecordingResult result = new RecordingResult();
+    callerHandler.post(() -> plugin.onMethodCall(new MethodCall(method, arguments), result));
+    result.await(method);
+    assertEquals(callerThread.getLooper(), result.looper.get());
+  }
+
+  /**
+   * Returns the audio ids of the calls of {@code method} the plugin has made on its method channel
+   * so far, once calls already posted to the main thread have been made.
+   */
+  List<String> sentAudioIds(String method) {
+    List<String> audioIds = new ArrayList<>();
+    InstrumentationRegistry.getInstrumentation()
+        .runOnMainSync(
+            () -> {
+              for (MethodCall call : sentCalls) {
+                if (call.method.equals(method)) {
+                  audioIds.add(call.argument("audioId"));
+                }
+              }
+            });
+    return audioIds;
+  }
+
+  /** Returns a mono 16-bit WAV file of {@code seconds} of silence. */
+  static byte[] silentWav(int seconds) {
+    int sampleRate = 8000;
+    int dataSize = sampleRate * 2 * seconds;
+    ByteBuffer wav = ByteBuffer.allocate(44 + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+    wav.put("RIFF".getBytes()).putInt(36 + dataSize).put("WAVE".getBytes());
+    wav.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1);
+    wav.putInt(sampleRate).putInt(sampleRate * 2).putShort((short) 2).putShort((short) 16);
+    wav.put("data".getBytes()).putInt(dataSize);
+    return wav.array();
+  }
+}
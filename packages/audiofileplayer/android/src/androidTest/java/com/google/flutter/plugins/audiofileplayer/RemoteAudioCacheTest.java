@@ -0,0 +1,181 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests {@link RemoteAudioCache} and {@link RemoteManagedMediaPlayer} against a local HTTP server,
+ * recording the requests which reach it. Each test reads through a small cache in a directory of
+ * its own, except for player loads, which go through the shared cache, so URLs are never reused.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RemoteAudioCacheTest {
+  private final MockWebServer server = new MockWebServer();
+  private PluginHarness harness;
+  private byte[] resource;
+  private File cacheDirectory;
+  private RemoteAudioCache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    harness = new PluginHarness();
+    resource = PluginHarness.silentWav(1);
+    // Serves the whole resource to every request, as a server which ignores ranges would.
+    server.setDispatcher(
+        new Dispatcher() {
+          @Override
+          public MockResponse dispatch(RecordedRequest request) {
+            return new MockResponse().setBody(new Buffer().write(resource));
+          }
+        });
+    server.start();
+    cacheDirectory = new File(harness.context.getCacheDir(), "test_" + UUID.randomUUID());
+    // Room for two copies of the resource, but not three.
+    cache = new RemoteAudioCache(harness.context, cacheDirectory, resource.length * 5 / 2);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    cache.release();
+    SimpleCache.delete(cacheDirectory, new ExoDatabaseProvider(harness.context));
+    harness.release();
+    server.shutdown();
+  }
+
+  @Test
+  public void secondRead_isServedFromCache() throws IOException {
+    String url = uniqueUrl();
+
+    assertArrayEquals(resource, read(url, 0, C.LENGTH_UNSET));
+    assertArrayEquals(resource, read(url, 0, C.LENGTH_UNSET));
+
+    assertEquals(1, server.getRequestCount());
+  }
+
+  @Test
+  public void prefetch_cachesOnlyItsRange() throws Exception {
+    String url = uniqueUrl();
+
+    cache.prefetch(url, 0, 100).get(PluginHarness.TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    assertEquals(1, server.getRequestCount());
+
+    assertArrayEquals(Arrays.copyOfRange(resource, 0, 100), read(url, 0, 100));
+    assertEquals(1, server.getRequestCount());
+    assertArrayEquals(Arrays.copyOfRange(resource, 100, 200), read(url, 100, 100));
+    assertEquals(2, server.getRequestCount());
+  }
+
+  @Test
+  public void overBudget_evictsLeastRecentlyRead() throws Exception {
+    String first = uniqueUrl();
+    String second = uniqueUrl();
+    String third = uniqueUrl();
+
+    read(first, 0, C.LENGTH_UNSET);
+    read(second, 0, C.LENGTH_UNSET);
+    // Makes second the least recently read; access times have millisecond resolution.
+    SystemClock.sleep(10);
+    read(first, 0, C.LENGTH_UNSET);
+    SystemClock.sleep(10);
+    read(third, 0, C.LENGTH_UNSET);
+    read(first, 0, C.LENGTH_UNSET);
+    read(third, 0, C.LENGTH_UNSET);
+    read(second, 0, C.LENGTH_UNSET);
+
+    assertEquals(
+        Arrays.asList(pathOf(first), pathOf(second), pathOf(third), pathOf(second)),
+        Arrays.asList(
+            server.takeRequest().getPath(),
+            server.takeRequest().getPath(),
+            server.takeRequest().getPath(),
+            server.takeRequest().getPath()));
+    assertEquals(4, server.getRequestCount());
+  }
+
+  @Test
+  public void secondLoadOfRemoteUrl_isServedFromCache() throws Exception {
+    String url = uniqueUrl();
+
+    load("a", url);
+    // Loading may carry on after the player is ready; wait for the whole resource.
+    long deadlineMs = SystemClock.elapsedRealtime() + PluginHarness.TIMEOUT_SECONDS * 1000;
+    Cache sharedCache = RemoteAudioCache.get(harness.context).getCache();
+    while (!sharedCache.isCached(url, 0, resource.length)) {
+      assertTrue("Not cached in time", SystemClock.elapsedRealtime() < deadlineMs);
+      SystemClock.sleep(10);
+    }
+    release("a");
+    int requestCount = server.getRequestCount();
+
+    load("b", url);
+    release("b");
+
+    assertEquals(requestCount, server.getRequestCount());
+  }
+
+  private String uniqueUrl() {
+    return server.url("/" + UUID.randomUUID() + ".wav").toString();
+  }
+
+  private static String pathOf(String url) {
+    return Uri.parse(url).getPath();
+  }
+
+  private byte[] read(String url, long position, long length) throws IOException {
+    DataSource dataSource = cache.dataSourceFactory().createDataSource();
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    dataSource.open(new DataSpec(Uri.parse(url), position, length, null));
+    try {
+      byte[] buffer = new byte[256];
+      int bytesRead;
+      while ((bytesRead = dataSource.read(buffer, 0, buffer.length)) != C.RESULT_END_OF_INPUT) {
+        output.write(buffer, 0, bytesRead);
+      }
+    } finally {
+      dataSource.close();
+    }
+    return output.toByteArray();
+  }
+
+  /** Loads a remote player, which replies once it is ready. */
+  private void load(String audioId, String url) throws InterruptedException {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("audioId", audioId);
+    arguments.put("remoteUrl", url);
+    harness.call("load", arguments);
+  }
+
+  private void release(String audioId) throws InterruptedException {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("audioId", audioId);
+    harness.call("release", arguments);
+  }
+}
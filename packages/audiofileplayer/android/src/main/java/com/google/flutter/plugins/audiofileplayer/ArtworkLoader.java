@@ -0,0 +1,219 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.net.Uri;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import androidx.annotation.Nullable;
+import io.flutter.embedding.engine.loader.FlutterLoader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decodes metadata artwork off the main thread, downsampled to the sizes the media session uses.
+ *
+ * <p>Each image is decoded once, with {@link BitmapFactory.Options#inSampleSize} so that the full
+ * resolution bitmap is never allocated, into an album art bitmap (lock screen) and a smaller
+ * display icon (notification). Results are kept in a small LRU cache, so re-sending the same
+ * artwork returns the same {@link Artwork} without decoding.
+ *
+ * <p>Artwork can be given as encoded bytes (cached by content hash), or by reference as a file path
+ * (cached by path, size and modification time), a flutter asset or a content URI (both cached by
+ * name), so that the image itself does not need to cross the platform channel.
+ */
+class ArtworkLoader {
+  private static final String TAG = ArtworkLoader.class.getSimpleName();
+  // Longest edge of the album art shown on the lock screen.
+  static final int ALBUM_ART_MAX_SIZE_PX = 512;
+  // Longest edge of the icon shown in the media notification.
+  static final int DISPLAY_ICON_MAX_SIZE_PX = 256;
+  private static final int CACHE_MAX_BYTES = 4 * 1024 * 1024;
+
+  /** Decoded artwork, at album art and display icon sizes. */
+  static final class Artwork {
+    final Bitmap albumArt;
+    final Bitmap displayIcon;
+
+    Artwork(Bitmap albumArt, Bitmap displayIcon) {
+      this.albumArt = albumArt;
+      this.displayIcon = displayIcon;
+    }
+
+    int getByteCount() {
+      int byteCount = albumArt.getByteCount();
+      if (displayIcon != albumArt) {
+        byteCount += displayIcon.getByteCount();
+      }
+      return byteCount;
+    }
+  }
+
+  interface Callback {
+    /** Called on the main thread with the artwork, or null if it could not be decoded. */
+    void onArtworkLoaded(@Nullable Artwork artwork);
+  }
+
+  /** Opens a fresh stream over an encoded image. */
+  private interface ImageSource {
+    InputStream open() throws IOException;
+  }
+
+  private final Context context;
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final LruCache<String, Artwork> cache =
+      new LruCache<String, Artwork>(CACHE_MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, Artwork artwork) {
+          return artwork.getByteCount();
+        }
+      };
+
+  ArtworkLoader(Context context) {
+    this.context = context;
+  }
+
+  /** Loads artwork from encoded image bytes. */
+  void loadBytes(byte[] bytes, Callback callback) {
+    executor.execute(
+        () ->
+            deliver(
+                load("bytes:" + sha1Hex(bytes), () -> new ByteArrayInputStream(bytes)), callback));
+  }
+
+  /** Loads artwork from an image file. */
+  void loadFile(String path, Callback callback) {
+    executor.execute(
+        () -> {
+          File file = new File(path);
+          // Keyed on size and modification time so that a rewritten file is decoded again.
+          String key = "file:" + path + ":" + file.length() + ":" + file.lastModified();
+          deliver(load(key, () -> new FileInputStream(file)), callback);
+        });
+  }
+
+  /** Loads artwork from a flutter asset. */
+  void loadFlutterAsset(String flutterPath, Callback callback) {
+    executor.execute(
+        () -> {
+          String assetKey = FlutterLoader.getInstance().getLookupKeyForAsset(flutterPath);
+          deliver(load("asset:" + assetKey, () -> context.getAssets().open(assetKey)), callback);
+        });
+  }
+
+  /** Loads artwork from a content, file or android.resource URI. */
+  void loadUri(String uriString, Callback callback) {
+    Uri uri = Uri.parse(uriString);
+    executor.execute(
+        () ->
+            deliver(
+                load("uri:" + uriString, () -> context.getContentResolver().openInputStream(uri)),
+                callback));
+  }
+
+  /** Stops the decoding thread; pending callbacks are dropped. */
+  void release() {
+    executor.shutdownNow();
+    mainHandler.removeCallbacksAndMessages(null);
+    cache.evictAll();
+  }
+
+  private void deliver(@Nullable Artwork artwork, Callback callback) {
+    mainHandler.post(() -> callback.onArtworkLoaded(artwork));
+  }
+
+  /** Returns the cached artwork for {@code key}, decoding it from {@code source} on a miss. */
+  @Nullable
+  private Artwork load(String key, ImageSource source) {
+    Artwork artwork = cache.get(key);
+    if (artwork != null) {
+      return artwork;
+    }
+    try {
+      artwork = decode(source);
+    } catch (IOException | SecurityException e) {
+      Log.w(TAG, "Could not read artwork " + key, e);
+      return null;
+    }
+    if (artwork != null) {
+      cache.put(key, artwork);
+    }
+    return artwork;
+  }
+
+  @Nullable
+  private static Artwork decode(ImageSource source) throws IOException {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    try (InputStream stream = source.open()) {
+      BitmapFactory.decodeStream(stream, null, options);
+    }
+    if (options.outWidth <= 0 || options.outHeight <= 0) {
+      Log.w(TAG, "Could not decode artwork bounds.");
+      return null;
+    }
+    options.inSampleSize =
+        sampleSizeFor(options.outWidth, options.outHeight, ALBUM_ART_MAX_SIZE_PX);
+    options.inJustDecodeBounds = false;
+    Bitmap bitmap;
+    try (InputStream stream = source.open()) {
+      bitmap = BitmapFactory.decodeStream(stream, null, options);
+    }
+    if (bitmap == null) {
+      Log.w(TAG, "Could not decode artwork.");
+      return null;
+    }
+    Bitmap albumArt = scaleToFit(bitmap, ALBUM_ART_MAX_SIZE_PX);
+    return new Artwork(albumArt, scaleToFit(albumArt, DISPLAY_ICON_MAX_SIZE_PX));
+  }
+
+  /** Largest power of two which keeps the longest edge at or above {@code maxSizePx}. */
+  private static int sampleSizeFor(int width, int height, int maxSizePx) {
+    int longestEdge = Math.max(width, height);
+    int sampleSize = 1;
+    while (longestEdge / (sampleSize * 2) >= maxSizePx) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+
+  /** Scales {@code bitmap} down so that its longest edge is at most {@code maxSizePx}. */
+  private static Bitmap scaleToFit(Bitmap bitmap, int maxSizePx) {
+    int longestEdge = Math.max(bitmap.getWidth(), bitmap.getHeight());
+    if (longestEdge <= maxSizePx) {
+      return bitmap;
+    }
+    float scale = (float) maxSizePx / longestEdge;
+    return Bitmap.createScaledBitmap(
+        bitmap,
+        Math.max(1, Math.round(bitmap.getWidth() * scale)),
+        Math.max(1, Math.round(bitmap.getHeight() * scale)),
+        /* filter= */ true);
+  }
+
+  private static String sha1Hex(byte[] bytes) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // SHA-1 is always available on Android; fall back to a weaker key regardless.
+      return bytes.length + ":" + Arrays.hashCode(bytes);
+    }
+  }
+}
@@ -3,17 +3,22 @@ package com.google.flutter.plugins.audiofileplayer;
 import android.app.Activity;
 import android.app.Application;
 import android.app.PendingIntent;
+import android.content.ComponentCallbacks2;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.AssetFileDescriptor;
-import android.content.res.AssetManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.content.res.Configuration;
 import android.media.AudioManager;
+import android.media.MediaExtractor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
 import android.os.RemoteException;
+import android.os.SystemClock;
 import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.session.MediaControllerCompat;
@@ -22,29 +27,40 @@ import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
 import android.view.KeyEvent;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 import androidx.media.session.MediaButtonReceiver;
 
-import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
-import com.google.android.exoplayer2.source.ExtractorMediaSource;
+import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
 
 import io.flutter.embedding.engine.loader.FlutterLoader;
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
+import io.flutter.plugin.common.BasicMessageChannel;
+import io.flutter.plugin.common.BinaryCodec;
 import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
 import io.flutter.plugin.common.MethodChannel.Result;
 import io.flutter.plugin.common.PluginRegistry.Registrar;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Flutter audio file player plugin.
@@ -62,14 +78,36 @@ public class AudiofileplayerPlugin
 
   // Method channel constants, matching those in the Dart and iOS plugin code.
   private static final String CHANNEL = "audiofileplayer";
+  // Number of loads which run in parallel on the load executor.
+  private static final int LOAD_THREAD_COUNT = 4;
+  private static final String EVENTS_CHANNEL = "audiofileplayer/events";
   private static final String LOAD_METHOD = "load";
   private static final String FLUTTER_PATH = "flutterPath";
   private static final String ABSOLUTE_PATH = "absolutePath";
   private static final String AUDIO_BYTES = "audioBytes";
   private static final String REMOTE_URL = "remoteUrl";
+  private static final String CONFIGURE_REMOTE_CACHE_METHOD = "configureRemoteCache";
+  private static final String REMOTE_CACHE_MAX_BYTES = "remoteCacheMaxBytes";
+  private static final String PREFETCH_REMOTE_URL_METHOD = "prefetchRemoteUrl";
+  private static final String REMOTE_PREFETCH_OFFSET_KILOBYTES = "remotePrefetchOffsetKilobytes";
+  private static final String REMOTE_PREFETCH_KILOBYTES = "remotePrefetchKilobytes";
   private static final String AUDIO_ID = "audioId";
+  private static final String PRELOAD_METHOD = "preload";
+  private static final String PLAYLIST = "playlist";
+  private static final String PLAYLIST_INDEX = "playlistIndex";
+  private static final String PLAYLIST_NEW_INDEX = "playlistNewIndex";
+  private static final String PLAYLIST_SOURCE = "playlistSource";
+  private static final String ADD_TO_PLAYLIST_METHOD = "addToPlaylist";
+  private static final String REMOVE_FROM_PLAYLIST_METHOD = "removeFromPlaylist";
+  private static final String MOVE_IN_PLAYLIST_METHOD = "moveInPlaylist";
+  private static final String ON_PLAYLIST_TRANSITION_CALLBACK = "onPlaylistTransition";
+  private static final String SOURCES = "sources";
   private static final String LOOPING = "looping";
   private static final String PLAY_IN_BACKGROUND = "playInBackground";
+  private static final String SOUND_EFFECT = "soundEffect";
+  private static final String MIXED = "mixed";
+  private static final String CONFIGURE_SOUND_EFFECTS_METHOD = "configureSoundEffects";
+  private static final String SOUND_EFFECT_MEMORY_CAP_BYTES = "soundEffectMemoryCapBytes";
   private static final String RELEASE_METHOD = "release";
   private static final String PLAY_METHOD = "play";
   private static final String PLAY_FROM_START = "playFromStart";
@@ -80,10 +118,58 @@ public class AudiofileplayerPlugin
   private static final String PAUSE_METHOD = "pause";
   private static final String ON_COMPLETE_CALLBACK = "onComplete";
   private static final String ON_DURATION_CALLBACK = "onDuration";
+  private static final String ON_READY_CALLBACK = "onReady";
+  private static final String ON_EVICTED_CALLBACK = "onEvicted";
   private static final String DURATION_SECONDS = "duration_seconds";
+  private static final String SAMPLE_RATE = "sample_rate";
+  private static final String CHANNEL_COUNT = "channel_count";
   private static final String ON_POSITION_CALLBACK = "onPosition";
   private static final String POSITION_SECONDS = "position_seconds";
+  private static final String ON_POSITIONS_CALLBACK = "onPositions";
+  private static final String AUDIO_IDS = "audioIds";
+  private static final String POSITIONS_SECONDS = "positions_seconds";
+  private static final String ON_POSITION_ANCHOR_CALLBACK = "onPositionAnchor";
+  private static final String ANCHOR_TIMESTAMP_MS = "anchor_timestamp_ms";
+  private static final String PLAYBACK_SPEED = "playback_speed";
   private static final String STOP_BACKGROUND_DISPLAY_METHOD = "stopBackgroundDisplay";
+  private static final String CONFIGURE_PLAYER_POOL_METHOD = "configurePlayerPool";
+  private static final String PLAYER_POOL_MAX_SIZE = "playerPoolMaxSize";
+  private static final String PLAYER_POOL_PREWARM_COUNT = "playerPoolPrewarmCount";
+  private static final String GET_PLAYER_POOL_STATS_METHOD = "getPlayerPoolStats";
+  private static final String GET_NOTIFICATION_STATS_METHOD = "getNotificationStats";
+  private static final String EXECUTE_BATCH_METHOD = "executeBatch";
+  private static final String SET_EVENT_CODEC_METHOD = "setEventCodec";
+  private static final String EVENT_CODEC = "eventCodec";
+  private static final String EVENT_CODEC_STANDARD = "standard";
+  private static final String EVENT_CODEC_BINARY = "binary";
+  private static final String CONFIGURE_PLAYBACK_THREAD_METHOD = "configurePlaybackThread";
+  private static final String DEDICATED_PLAYBACK_THREAD = "dedicatedPlaybackThread";
+  private static final String LOAD_STRATEGY = "loadStrategy";
+  private static final String LOAD_STRATEGY_LAZY = "lazy";
+  private static final String LOAD_STRATEGY_METADATA_ONLY = "metadataOnly";
+  private static final String LOAD_STRATEGY_PREPARED = "prepared";
+  private static final String CONFIGURE_PLAYER_EVICTION_METHOD = "configurePlayerEviction";
+  private static final String MAX_LIVE_PLAYERS = "maxLivePlayers";
+  private static final String CONFIGURE_BUFFER_BUDGET_METHOD = "configureBufferBudget";
+  private static final String BUFFER_BUDGET_BYTES = "bufferBudgetBytes";
+  private static final String BUFFER_PROFILE = "bufferProfile";
+  private static final String BUFFER_PROFILE_LOW_MEMORY = "lowMemory";
+  private static final String GET_STATS_METHOD = "getStats";
+  private static final String CONFIGURE_STATS_METHOD = "configureStats";
+  private static final String STATS_INTERVAL_MS = "statsIntervalMs";
+  private static final String ON_STATS_CALLBACK = "onStats";
+  private static final String SET_TRACING_ENABLED_METHOD = "setTracingEnabled";
+  private static final String TRACING_ENABLED = "enabled";
+  private static final String BATCH_COMMANDS = "commands";
+  private static final String BATCH_METHOD = "method";
+  private static final String BATCH_ARGUMENTS = "arguments";
+  private static final String SET_POSITION_UPDATE_INTERVAL_METHOD = "setPositionUpdateInterval";
+  private static final String POSITION_UPDATE_INTERVAL_SECONDS = "positionUpdateIntervalSeconds";
+  private static final String SET_POSITION_REPORTING_MODE_METHOD = "setPositionReportingMode";
+  private static final String POSITION_REPORTING_MODE = "positionReportingMode";
+  private static final String POSITION_REPORTING_PER_PLAYER = "perPlayer";
+  private static final String POSITION_REPORTING_BATCHED = "batched";
+  private static final String POSITION_REPORTING_ANCHOR = "anchor";
   private static final String ERROR_CODE = "AudioPluginError";
 
   // Constants for updating playback state from Dart.
@@ -100,6 +186,9 @@ public class AudiofileplayerPlugin
   private static final String METADATA_GENRE = "metadataGenre";
   private static final String METADATA_DURATION_SECONDS = "metadataDurationSeconds";
   private static final String METADATA_ART_BYTES = "metadataArtBytes";
+  private static final String METADATA_ART_FILE_PATH = "metadataArtFilePath";
+  private static final String METADATA_ART_FLUTTER_PATH = "metadataArtFlutterPath";
+  private static final String METADATA_ART_URI = "metadataArtUri";
 
   // Constants for setting supported actions from Dart, and sending media events to Dart.
   private static final String SET_SUPPORTED_MEDIA_ACTIONS_METHOD = "setSupportedMediaActions";
@@ -130,8 +219,94 @@ public class AudiofileplayerPlugin
   private Registrar registrar;
   // Activity used by v2 embedding.
   private Activity activity;
+  // Methods which touch the media session, notification or channels rather than the players, and
+  // so always run on the main thread; all others run on the player thread.
+  private static final Set<String> MAIN_THREAD_METHODS =
+      new HashSet<>(
+          Arrays.asList(
+              SET_PLAYBACK_STATE_METHOD,
+              SET_METADATA_METHOD,
+              SET_SUPPORTED_MEDIA_ACTIONS_METHOD,
+              SET_ANDROID_MEDIA_BUTTONS_METHOD,
+              STOP_BACKGROUND_DISPLAY_METHOD,
+              GET_NOTIFICATION_STATS_METHOD,
+              SET_EVENT_CODEC_METHOD,
+              CONFIGURE_PLAYBACK_THREAD_METHOD,
+              CONFIGURE_REMOTE_CACHE_METHOD,
+              PREFETCH_REMOTE_URL_METHOD,
+              CONFIGURE_SOUND_EFFECTS_METHOD,
+              CONFIGURE_STATS_METHOD,
+              SET_TRACING_ENABLED_METHOD));
   private Map<String, ManagedMediaPlayer> mediaPlayers;
+  // Players and mixer clips whose load is in progress on loadExecutor, by audioId. Each load
+  // completes only if its own entry is still present, so that a release followed by a new load of
+  // the same id is not completed by the first load.
+  private Map<String, PendingLoad> pendingLoads;
+  private ExecutorService loadExecutor;
+  private MediaInfoProbe mediaInfoProbe;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  // When set, players are created and driven on this thread rather than the main thread.
+  private HandlerThread playbackThread;
+  private Handler playbackHandler;
+  private final PluginStats pluginStats = new PluginStats();
+  // Records channel messages in pluginStats once getStats or configureStats is first called.
+  private StatsBinaryMessenger statsMessenger;
+  // Notification button intents, built on the main thread for the first push of each button.
+  private final Map<Long, PendingIntent> mediaButtonPendingIntents = new HashMap<>();
+  private final Map<String, PendingIntent> customMediaButtonPendingIntents = new HashMap<>();
+  // Interval of the periodic onStats event; 0 while disabled.
+  private long statsIntervalMs;
+  private final Runnable statsRunnable =
+      new Runnable() {
+        @Override
+        public void run() {
+          if (methodChannel == null) {
+            return;
+          }
+          methodChannel.invokeMethod(ON_STATS_CALLBACK, getStats());
+          mainHandler.postDelayed(this, statsIntervalMs);
+        }
+      };
+  // Shared by every pool's players, so that it outlives pools replaced by configurePlaybackThread.
+  private final BufferBudget bufferBudget = new BufferBudget(BufferBudget.DEFAULT_BUDGET_BYTES);
+  private PlayerPool playerPool;
+  private Preloader preloader;
+  // Most players holding an underlying ExoPlayer at once; idle players beyond it are evicted.
+  private int maxLivePlayers = Integer.MAX_VALUE;
+  private int evictionCount;
+  private final ComponentCallbacks2 memoryCallbacks =
+      new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+          if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            runOnPlayerThread(AudiofileplayerPlugin.this::onMemoryPressure);
+          }
+        }
+
+        @Override
+        public void onLowMemory() {
+          runOnPlayerThread(AudiofileplayerPlugin.this::onMemoryPressure);
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {}
+      };
+  private MixerEngine mixerEngine;
+  private ArtworkLoader artworkLoader;
+  // Incremented on each setMetadata call, so that artwork loaded for stale metadata is dropped.
+  private int metadataGeneration;
+  // Last metadata published to the service (without artwork), and its artwork.
+  private Map<String, ?> publishedMetadataFields;
+  private ArtworkLoader.Artwork publishedArtwork;
+  private AudiofileplayerService publishedMetadataService;
+  private PositionTicker positionTicker;
+  private String positionReportingMode = POSITION_REPORTING_PER_PLAYER;
   private MethodChannel methodChannel;
+  // Used instead of methodChannel for position, duration, completion, playlist and media events
+  // while binaryEventCodec is set.
+  private BasicMessageChannel<ByteBuffer> eventChannel;
+  // Only used on the main thread, where events are sent; see releaseEventHandle.
+  private BinaryEventCodec binaryEventCodec;
   private Context context;
 
   private MediaBrowserCompat mediaBrowser;
@@ -151,11 +326,26 @@ public class AudiofileplayerPlugin
     activity.getApplication().registerActivityLifecycleCallbacks(callbacks);
   }
 
-  private void initInstance(BinaryMessenger messenger, Context context) {
+  /** Sets up channels and players; package-private for instrumented tests. */
+  void initInstance(BinaryMessenger messenger, Context context) {
     this.context = context;
-    methodChannel = new MethodChannel(messenger, CHANNEL);
+    statsMessenger = new StatsBinaryMessenger(messenger, CHANNEL, pluginStats);
+    methodChannel = new MethodChannel(statsMessenger, CHANNEL);
+    eventChannel =
+        new BasicMessageChannel<>(statsMessenger, EVENTS_CHANNEL, BinaryCodec.INSTANCE);
     methodChannel.setMethodCallHandler(this);
-    mediaPlayers = new HashMap<>();
+    mediaPlayers = new ConcurrentHashMap<>();
+    pendingLoads = new ConcurrentHashMap<>();
+    loadExecutor = Executors.newFixedThreadPool(LOAD_THREAD_COUNT);
+    mediaInfoProbe = new MediaInfoProbe(context);
+    context.registerComponentCallbacks(memoryCallbacks);
+    playerPool =
+        new PlayerPool(
+            context, PlayerPool.DEFAULT_MAX_SIZE, Looper.getMainLooper(), bufferBudget);
+    preloader = new Preloader(playerPool);
+    mixerEngine = createMixerEngine();
+    artworkLoader = new ArtworkLoader(context);
+    positionTicker = new PositionTicker(mainHandler, this);
     Context activeContext = activeContext();
     mediaBrowser =
         new MediaBrowserCompat(
@@ -187,11 +377,48 @@ public class AudiofileplayerPlugin
 
   @Override
   public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
+    releaseInstance();
+  }
+
+  /** Undoes {@link #initInstance}; package-private for instrumented tests. */
+  void releaseInstance() {
+    mainHandler.removeCallbacks(statsRunnable);
+    context.unregisterComponentCallbacks(memoryCallbacks);
     methodChannel.setMethodCallHandler(null);
     methodChannel = null;
+    eventChannel = null;
+    statsMessenger = null;
+    mediaButtonPendingIntents.clear();
+    customMediaButtonPendingIntents.clear();
+    binaryEventCodec = null;
     mediaBrowser = null;
-    mediaPlayers.clear();
+    loadExecutor.shutdownNow();
+    loadExecutor = null;
+    // Loads still in progress reply with an error on completion.
+    pendingLoads.clear();
+    artworkLoader.release();
+    artworkLoader = null;
+    Map<String, ManagedMediaPlayer> detachedPlayers = mediaPlayers;
+    Preloader detachedPreloader = preloader;
+    PlayerPool detachedPlayerPool = playerPool;
+    MixerEngine detachedMixerEngine = mixerEngine;
+    HandlerThread detachedPlaybackThread = playbackThread;
+    runOnPlayerThread(
+        () -> {
+          detachedPlayers.clear();
+          detachedPreloader.clear();
+          detachedMixerEngine.release();
+          detachedPlayerPool.clear();
+          if (detachedPlaybackThread != null) {
+            detachedPlaybackThread.quitSafely();
+          }
+        });
     mediaPlayers = null;
+    preloader = null;
+    mixerEngine = null;
+    playerPool = null;
+    playbackThread = null;
+    playbackHandler = null;
     context = null;
   }
 
@@ -224,118 +451,586 @@ public class AudiofileplayerPlugin
     detachToActivity();
   }
 
+  /** Handles a plugin-level method call. */
+  private interface MethodHandler {
+    void handle(MethodCall call, Result result);
+  }
+
+  /** Handles a method call on a loaded {@link ManagedMediaPlayer}. */
+  private interface PlayerMethodHandler {
+    void handle(ManagedMediaPlayer player, MethodCall call, Result result);
+  }
+
+  /** Handles a method call on a sound effect or mixed source of the {@link MixerEngine}. */
+  private interface MixerClipMethodHandler {
+    void handle(String audioId, MethodCall call, Result result);
+  }
+
+  /** Applies an edit to a player loaded with a playlist; exceptions are replied as errors. */
+  private interface PlaylistEditHandler {
+    void edit(PlaylistManagedMediaPlayer player, MethodCall call);
+  }
+
+  // Dispatch tables, keyed by method name. Methods not in methodHandlers need an audioId.
+  private final Map<String, MethodHandler> methodHandlers = new HashMap<>();
+  private final Map<String, PlayerMethodHandler> playerMethodHandlers = new HashMap<>();
+  private final Map<String, MixerClipMethodHandler> soundEffectMethodHandlers = new HashMap<>();
+  private final Map<String, MixerClipMethodHandler> mixedSourceMethodHandlers = new HashMap<>();
+
+  {
+    methodHandlers.put(
+        LOAD_METHOD,
+        (call, result) -> {
+          boolean traced = Tracing.begin(Tracing.ON_LOAD);
+          try {
+            onLoad(call, result);
+          } finally {
+            Tracing.end(traced);
+          }
+        });
+    methodHandlers.put(PRELOAD_METHOD, this::onPreload);
+    methodHandlers.put(EXECUTE_BATCH_METHOD, this::onExecuteBatch);
+    methodHandlers.put(
+        SET_PLAYBACK_STATE_METHOD,
+        (call, result) -> {
+          Boolean isPlayingBoolean = call.argument(PLAYBACK_IS_PLAYING);
+          Double positionSecondsDouble = call.argument(PLAYBACK_POSITION_SECONDS);
+          long positionMs =
+              positionSecondsDouble == null
+                  ? PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN
+                  : (long) Math.floor(positionSecondsDouble * 1000);
+          AudiofileplayerService.instance.setPlaybackStateState(
+              isPlayingBoolean
+                  ? PlaybackStateCompat.STATE_PLAYING
+                  : PlaybackStateCompat.STATE_PAUSED,
+              positionMs,
+              1.0f);
+          result.success(null);
+        });
+    methodHandlers.put(
+        SET_METADATA_METHOD,
+        (call, result) -> {
+          onSetMetadata((Map<String, ?>) call.arguments);
+          result.success(null);
+        });
+    methodHandlers.put(
+        SET_SUPPORTED_MEDIA_ACTIONS_METHOD,
+        (call, result) -> {
+          List<String> mediaActionStrings = call.argument(MEDIA_ACTIONS);
+          long playbackStateActions = mediaActionStringsToPlaybackStateActions(mediaActionStrings);
+          AudiofileplayerService.instance.setPlaybackStateActions(playbackStateActions);
+          result.success((null));
+        });
+    methodHandlers.put(
+        SET_ANDROID_MEDIA_BUTTONS_METHOD,
+        (call, result) -> {
+          List<?> mediaButtonTypesOrCustoms = call.argument(MEDIA_BUTTONS);
+          List<NotificationCompat.Action> actions = new ArrayList<>();
+          for (Object mediaButtonTypeOrCustom : mediaButtonTypesOrCustoms) {
+            if (mediaButtonTypeOrCustom instanceof String) {
+              actions.add(mediaButtonTypeToAction((String) mediaButtonTypeOrCustom));
+            } else if (mediaButtonTypeOrCustom instanceof Map) {
+              actions.add(customMediaButtonMapToAction((Map) mediaButtonTypeOrCustom));
+            }
+          }
+          List<Integer> compactIndicesList = call.argument(MEDIA_COMPACT_INDICES);
+          AudiofileplayerService.instance.setActions(actions, compactIndicesList);
+          result.success(null);
+        });
+    methodHandlers.put(
+        STOP_BACKGROUND_DISPLAY_METHOD,
+        (call, result) -> {
+          AudiofileplayerService.instance.stop();
+          result.success(null);
+        });
+    methodHandlers.put(
+        CONFIGURE_PLAYER_POOL_METHOD,
+        (call, result) -> {
+          Integer maxSize = call.argument(PLAYER_POOL_MAX_SIZE);
+          if (maxSize != null) {
+            playerPool.setMaxSize(maxSize);
+          }
+          Integer prewarmCount = call.argument(PLAYER_POOL_PREWARM_COUNT);
+          if (prewarmCount != null) {
+            playerPool.prewarm(prewarmCount);
+          }
+          result.success(null);
+        });
+    methodHandlers.put(CONFIGURE_PLAYBACK_THREAD_METHOD, this::onConfigurePlaybackThread);
+    methodHandlers.put(
+        GET_STATS_METHOD,
+        (call, result) -> {
+          // Message counts start from the first request.
+          statsMessenger.setEnabled(true);
+          result.success(getStats());
+        });
+    methodHandlers.put(
+        SET_TRACING_ENABLED_METHOD,
+        (call, result) -> {
+          Boolean enabled = call.argument(TRACING_ENABLED);
+          Tracing.setEnabled(enabled != null && enabled);
+          result.success(null);
+        });
+    methodHandlers.put(
+        CONFIGURE_STATS_METHOD,
+        (call, result) -> {
+          Number intervalMs = call.argument(STATS_INTERVAL_MS);
+          statsIntervalMs = intervalMs == null ? 0 : Math.max(0, intervalMs.longValue());
+          statsMessenger.setEnabled(true);
+          mainHandler.removeCallbacks(statsRunnable);
+          if (statsIntervalMs > 0) {
+            mainHandler.postDelayed(statsRunnable, statsIntervalMs);
+          }
+          result.success(null);
+        });
+    methodHandlers.put(
+        CONFIGURE_BUFFER_BUDGET_METHOD,
+        (call, result) -> {
+          Integer budgetBytes = call.argument(BUFFER_BUDGET_BYTES);
+          if (budgetBytes == null || budgetBytes <= 0) {
+            result.error(
+                ERROR_CODE, "configureBufferBudget needs a positive bufferBudgetBytes.", null);
+            return;
+          }
+          bufferBudget.setBudgetBytes(budgetBytes);
+          result.success(null);
+        });
+    methodHandlers.put(
+        CONFIGURE_PLAYER_EVICTION_METHOD,
+        (call, result) -> {
+          Integer maxLivePlayersInteger = call.argument(MAX_LIVE_PLAYERS);
+          maxLivePlayers =
+              maxLivePlayersInteger == null || maxLivePlayersInteger <= 0
+                  ? Integer.MAX_VALUE
+                  : maxLivePlayersInteger;
+          evictIdlePlayers(maxLivePlayers);
+          result.success(null);
+        });
+    methodHandlers.put(
+        GET_PLAYER_POOL_STATS_METHOD,
+        (call, result) -> {
+          Map<String, Object> stats = playerPool.getStats();
+          int livePlayerCount = 0;
+          for (ManagedMediaPlayer player : mediaPlayers.values()) {
+            if (player.hasPlayer()) {
+              livePlayerCount++;
+            }
+          }
+          stats.put("livePlayers", livePlayerCount);
+          stats.put("maxLivePlayers", maxLivePlayers == Integer.MAX_VALUE ? 0 : maxLivePlayers);
+          stats.put("evictions", evictionCount);
+          result.success(stats);
+        });
+    methodHandlers.put(
+        GET_NOTIFICATION_STATS_METHOD,
+        (call, result) -> {
+          AudiofileplayerService service = AudiofileplayerService.instance;
+          result.success(service != null ? service.getNotificationStats() : null);
+        });
+    methodHandlers.put(
+        CONFIGURE_SOUND_EFFECTS_METHOD,
+        (call, result) -> {
+          Number memoryCapBytes = call.argument(SOUND_EFFECT_MEMORY_CAP_BYTES);
+          if (memoryCapBytes != null) {
+            mixerEngine.setMemoryCapBytes(memoryCapBytes.longValue());
+          }
+          result.success(null);
+        });
+    methodHandlers.put(
+        CONFIGURE_REMOTE_CACHE_METHOD,
+        (call, result) -> {
+          Number maxBytes = call.argument(REMOTE_CACHE_MAX_BYTES);
+          if (maxBytes != null && !RemoteAudioCache.setMaxBytes(maxBytes.longValue())) {
+            result.error(
+                ERROR_CODE,
+                "Cannot change the remote cache size once remote audio is loaded.",
+                null);
+            return;
+          }
+          result.success(null);
+        });
+    methodHandlers.put(
+        PREFETCH_REMOTE_URL_METHOD,
+        (call, result) -> {
+          String remoteUrl = call.argument(REMOTE_URL);
+          Integer offsetKilobytes = call.argument(REMOTE_PREFETCH_OFFSET_KILOBYTES);
+          Integer prefetchKilobytes = call.argument(REMOTE_PREFETCH_KILOBYTES);
+          if (remoteUrl == null || prefetchKilobytes == null) {
+            result.error(ERROR_CODE, "prefetchRemoteUrl needs a remoteUrl and a size.", null);
+            return;
+          }
+          RemoteAudioCache.get(context)
+              .prefetch(
+                  remoteUrl,
+                  offsetKilobytes == null ? 0 : offsetKilobytes * 1024L,
+                  prefetchKilobytes * 1024L);
+          result.success(null);
+        });
+    methodHandlers.put(
+        SET_POSITION_UPDATE_INTERVAL_METHOD,
+        (call, result) -> {
+          if (call.argument(AUDIO_ID) != null) {
+            onPlayerMethodCall(call, result);
+            return;
+          }
+          // Without an audioId, sets the plugin-wide interval.
+          positionTicker.setDefaultIntervalMs(positionUpdateIntervalMsFromCall(call));
+          result.success(null);
+        });
+    methodHandlers.put(
+        SET_EVENT_CODEC_METHOD,
+        (call, result) -> {
+          String eventCodec = call.argument(EVENT_CODEC);
+          if (EVENT_CODEC_BINARY.equals(eventCodec)) {
+            // A new codec starts with no interned ids, matching a fresh table on the Dart side.
+            binaryEventCodec = new BinaryEventCodec();
+          } else if (EVENT_CODEC_STANDARD.equals(eventCodec)) {
+            binaryEventCodec = null;
+          } else {
+            result.error(ERROR_CODE, "Unsupported event codec: " + eventCodec, null);
+            return;
+          }
+          result.success(null);
+        });
+    methodHandlers.put(
+        SET_POSITION_REPORTING_MODE_METHOD,
+        (call, result) -> {
+          String mode = call.argument(POSITION_REPORTING_MODE);
+          if (!POSITION_REPORTING_PER_PLAYER.equals(mode)
+              && !POSITION_REPORTING_BATCHED.equals(mode)
+              && !POSITION_REPORTING_ANCHOR.equals(mode)) {
+            result.error(ERROR_CODE, "Unsupported position reporting mode: " + mode, null);
+            return;
+          }
+          setPositionReportingMode(mode);
+          result.success(null);
+        });
+
+    playerMethodHandlers.put(
+        PLAY_METHOD,
+        (player, call, result) -> {
+          Boolean playFromStartBoolean = call.argument(PLAY_FROM_START);
+          boolean playFromStart = playFromStartBoolean.booleanValue();
+          Double endpointSecondsDouble = call.argument(ENDPOINT_SECONDS);
+          int endpointMs =
+              endpointSecondsDouble == null
+                  ? ManagedMediaPlayer.PLAY_TO_END
+                  : (int) Math.floor(endpointSecondsDouble * 1000);
+          player.play(playFromStart, endpointMs);
+
+          // Calls the MediaSessionCompat.Callback.onPlay() in the AudiofileplayerService
+          // Note that without this, the service doesn't start, but the audio still continues to
+          // play in the background; it appears that using MediaBrowserService keeps this context
+          // active.
+          if (player.playInBackground) {
+            mediaController.getTransportControls().play();
+          }
+          result.success(null);
+        });
+    playerMethodHandlers.put(
+        RELEASE_METHOD,
+        (player, call, result) -> {
+          player.release();
+          mediaPlayers.remove(player.getAudioId());
+          releaseEventHandle(player.getAudioId());
+          result.success(null);
+        });
+    playerMethodHandlers.put(
+        SEEK_METHOD,
+        (player, call, result) -> {
+          Double positionSecondsDouble = call.argument(POSITION_SECONDS);
+          double positionSeconds = positionSecondsDouble.doubleValue();
+          player.seek(positionSeconds, () -> result.success(null));
+        });
+    playerMethodHandlers.put(
+        SET_VOLUME_METHOD,
+        (player, call, result) -> {
+          Double volumeDouble = call.argument(VOLUME);
+          double volume = volumeDouble.doubleValue();
+          player.setVolume(volume);
+          result.success(null);
+        });
+    playerMethodHandlers.put(
+        PAUSE_METHOD,
+        (player, call, result) -> {
+          player.pause();
+          result.success(null);
+        });
+    playerMethodHandlers.put(
+        SET_POSITION_UPDATE_INTERVAL_METHOD,
+        (player, call, result) -> {
+          player.setPositionUpdateIntervalMs(positionUpdateIntervalMsFromCall(call));
+          result.success(null);
+        });
+    playerMethodHandlers.put(
+        ADD_TO_PLAYLIST_METHOD,
+        playlistEditHandler(
+            (player, call) -> {
+              Integer index = call.argument(PLAYLIST_INDEX);
+              Map<String, ?> source = call.argument(PLAYLIST_SOURCE);
+              player.add(index, buildMediaSourceFromArguments(source));
+            }));
+    playerMethodHandlers.put(
+        REMOVE_FROM_PLAYLIST_METHOD,
+        playlistEditHandler(
+            (player, call) -> {
+              Integer index = call.argument(PLAYLIST_INDEX);
+              player.remove(index);
+            }));
+    playerMethodHandlers.put(
+        MOVE_IN_PLAYLIST_METHOD,
+        playlistEditHandler(
+            (player, call) -> {
+              Integer index = call.argument(PLAYLIST_INDEX);
+              Integer newIndex = call.argument(PLAYLIST_NEW_INDEX);
+              player.move(index, newIndex);
+            }));
+
+    // Each play of a sound effect starts another overlapping instance of the clip; pause stops all
+    // instances.
+    soundEffectMethodHandlers.put(
+        PLAY_METHOD,
+        (audioId, call, result) -> {
+          mixerEngine.trigger(audioId);
+          result.success(null);
+        });
+    soundEffectMethodHandlers.put(
+        PAUSE_METHOD,
+        (audioId, call, result) -> {
+          mixerEngine.stopVoices(audioId);
+          result.success(null);
+        });
+    // Sound effects always play from the start.
+    soundEffectMethodHandlers.put(SEEK_METHOD, (audioId, call, result) -> result.success(null));
+    soundEffectMethodHandlers.put(SET_VOLUME_METHOD, this::onMixerClipSetVolume);
+    soundEffectMethodHandlers.put(RELEASE_METHOD, this::onMixerClipRelease);
+
+    // Mixed sources play, pause and seek like a player, but are rendered into the shared mixer
+    // output.
+    mixedSourceMethodHandlers.put(
+        PLAY_METHOD,
+        (audioId, call, result) -> {
+          Boolean playFromStartBoolean = call.argument(PLAY_FROM_START);
+          if (playFromStartBoolean != null && playFromStartBoolean) {
+            mixerEngine.seek(audioId, 0);
+          }
+          mixerEngine.play(audioId);
+          result.success(null);
+        });
+    mixedSourceMethodHandlers.put(
+        PAUSE_METHOD,
+        (audioId, call, result) -> {
+          mixerEngine.pause(audioId);
+          result.success(null);
+        });
+    mixedSourceMethodHandlers.put(
+        SEEK_METHOD,
+        (audioId, call, result) -> {
+          Double positionSecondsDouble = call.argument(POSITION_SECONDS);
+          mixerEngine.seek(audioId, positionSecondsDouble.doubleValue());
+          result.success(null);
+        });
+    mixedSourceMethodHandlers.put(SET_VOLUME_METHOD, this::onMixerClipSetVolume);
+    mixedSourceMethodHandlers.put(RELEASE_METHOD, this::onMixerClipRelease);
+  }
+
+  /**
+   * Dispatches a method call on the thread it runs on: the main thread for {@link
+   * #MAIN_THREAD_METHODS}, otherwise the player thread. A call made on another thread is posted,
+   * and its result delivered back on the calling thread, or on the main thread if the calling
+   * thread has no looper.
+   */
   @Override
   public void onMethodCall(MethodCall call, Result result) {
     Log.i(TAG, "onMethodCall: method = " + call.method);
-    Log.i(TAG, "hellloa " + call.method);
-    Log.i(TAG, "hellloazza " + call.method);
-    Log.i(TAG, "helddddlloazza " + call.method);
-    if (call.method.equals(LOAD_METHOD)) {
-      onLoad(call, result);
-      return;
-    } else if (call.method.equals(SET_PLAYBACK_STATE_METHOD)) {
-      Boolean isPlayingBoolean = call.argument(PLAYBACK_IS_PLAYING);
-      Double positionSecondsDouble = call.argument(PLAYBACK_POSITION_SECONDS);
-      long positionMs =
-          positionSecondsDouble == null
-              ? PlaybackStateCompat.PLAYBACK_POSITION_UNKNOWN
-              : (long) Math.floor(positionSecondsDouble * 1000);
-      AudiofileplayerService.instance.setPlaybackStateState(
-          isPlayingBoolean ? PlaybackStateCompat.STATE_PLAYING : PlaybackStateCompat.STATE_PAUSED,
-          positionMs,
-          1.0f);
-      result.success(null);
+    Handler handler =
+        MAIN_THREAD_METHODS.contains(call.method) ? mainHandler : getPlayerHandler();
+    Looper callingLooper = Looper.myLooper();
+    if (callingLooper == handler.getLooper()) {
+      dispatchMethodCall(call, result);
       return;
-    } else if (call.method.equals(SET_METADATA_METHOD)) {
-      MediaMetadataCompat metadata = mapToMetadata((Map<String, ?>) call.arguments);
-      AudiofileplayerService.instance.setMetadata(metadata);
-      result.success(null);
+    }
+    Handler callingHandler =
+        callingLooper == null || callingLooper == mainHandler.getLooper()
+            ? mainHandler
+            : new Handler(callingLooper);
+    Result callingThreadResult = new HandlerResult(result, callingHandler);
+    handler.post(
+        () -> {
+          if (methodChannel == null) {
+            // Detached while the call was queued.
+            return;
+          }
+          try {
+            dispatchMethodCall(call, callingThreadResult);
+          } catch (RuntimeException e) {
+            callingThreadResult.error(ERROR_CODE, call.method + " failed: " + e.getMessage(), null);
+          }
+        });
+  }
+
+  private void dispatchMethodCall(MethodCall call, Result result) {
+    MethodHandler handler = methodHandlers.get(call.method);
+    if (handler != null) {
+      handler.handle(call, result);
       return;
-    } else if (call.method.equals(SET_SUPPORTED_MEDIA_ACTIONS_METHOD)) {
-      List<String> mediaActionStrings = call.argument(MEDIA_ACTIONS);
-      long playbackStateActions = mediaActionStringsToPlaybackStateActions(mediaActionStrings);
-      AudiofileplayerService.instance.setPlaybackStateActions(playbackStateActions);
-      result.success((null));
-      return;
-    } else if (call.method.equals(SET_ANDROID_MEDIA_BUTTONS_METHOD)) {
-      List<?> mediaButtonTypesOrCustoms = call.argument(MEDIA_BUTTONS);
-      List<NotificationCompat.Action> actions = new ArrayList<>();
-      for (Object mediaButtonTypeOrCustom : mediaButtonTypesOrCustoms) {
-        if (mediaButtonTypeOrCustom instanceof String) {
-          actions.add(mediaButtonTypeToAction((String) mediaButtonTypeOrCustom));
-        } else if (mediaButtonTypeOrCustom instanceof Map) {
-          actions.add(customMediaButtonMapToAction((Map) mediaButtonTypeOrCustom));
-        }
+    }
+    onPlayerMethodCall(call, result);
+  }
+
+  /** Dispatches a method call addressed, by audioId, to a player or mixer clip. */
+  private void onPlayerMethodCall(MethodCall call, Result result) {
+    // Sound effects and mixed sources are played by the MixerEngine rather than a
+    // ManagedMediaPlayer.
+    String mixerAudioId = call.argument(AUDIO_ID);
+    if (mixerAudioId != null && mixerEngine.hasClip(mixerAudioId)) {
+      MixerClipMethodHandler mixerHandler =
+          (mixerEngine.isSoundEffect(mixerAudioId)
+                  ? soundEffectMethodHandlers
+                  : mixedSourceMethodHandlers)
+              .get(call.method);
+      if (mixerHandler == null) {
+        result.notImplemented();
+        return;
       }
-      List<Integer> compactIndicesList = call.argument(MEDIA_COMPACT_INDICES);
-      AudiofileplayerService.instance.setActions(actions, compactIndicesList);
-      result.success(null);
+      mixerHandler.handle(mixerAudioId, call, result);
       return;
-    } else if (call.method.equals(STOP_BACKGROUND_DISPLAY_METHOD)) {
-      AudiofileplayerService.instance.stop();
-      result.success(null);
+    }
+
+    PendingLoad pendingLoad = mixerAudioId == null ? null : pendingLoads.get(mixerAudioId);
+    if (pendingLoad != null) {
+      if (call.method.equals(RELEASE_METHOD)) {
+        // Releasing a player whose load is in progress cancels the load.
+        pendingLoads.remove(mixerAudioId);
+        result.success(null);
+        pendingLoad.runQueuedCalls();
+      } else {
+        // Applied once the load completes, e.g. a play sent right after its load in a batch.
+        pendingLoad.queueCall(
+            () -> {
+              try {
+                onPlayerMethodCall(call, result);
+              } catch (RuntimeException e) {
+                result.error(ERROR_CODE, call.method + " failed: " + e.getMessage(), null);
+              }
+            });
+      }
       return;
     }
 
-    // All subsequent calls need a valid player.
+    PlayerMethodHandler handler = playerMethodHandlers.get(call.method);
+    if (handler == null) {
+      result.notImplemented();
+      return;
+    }
     ManagedMediaPlayer player = getAndVerifyPlayer(call, result);
+    if (player == null) {
+      return;
+    }
+    handler.handle(player, call, result);
+    // A play may have acquired a player, or a pause made one evictable.
+    evictIdlePlayers(maxLivePlayers);
+  }
 
-    if (call.method.equals(PLAY_METHOD)) {
-      Boolean playFromStartBoolean = call.argument(PLAY_FROM_START);
-      boolean playFromStart = playFromStartBoolean.booleanValue();
-      Double endpointSecondsDouble = call.argument(ENDPOINT_SECONDS);
-      int endpointMs =
-          endpointSecondsDouble == null
-              ? ManagedMediaPlayer.PLAY_TO_END
-              : (int) Math.floor(endpointSecondsDouble * 1000);
-      player.play(playFromStart, endpointMs);
-
-      // Calls the MediaSessionCompat.Callback.onPlay() in the AudiofileplayerService
-      // Note that without this, the service doesn't start, but the audio still continues to
-      // play in the background; it appears that using MediaBrowserService keeps this context
-      // active.
-      if (player.playInBackground) {
-        mediaController.getTransportControls().play();
+  /**
+   * Evicts idle players, least recently used first, until at most {@code maxLive} hold an
+   * underlying ExoPlayer or no more are idle. See {@link ManagedMediaPlayer#evict()}.
+   */
+  private void evictIdlePlayers(int maxLive) {
+    List<ManagedMediaPlayer> livePlayers = new ArrayList<>();
+    for (ManagedMediaPlayer player : mediaPlayers.values()) {
+      if (player.hasPlayer()) {
+        livePlayers.add(player);
       }
-      result.success(null);
-    } else if (call.method.equals(RELEASE_METHOD)) {
-      player.release();
-      mediaPlayers.remove(player.getAudioId());
-      result.success(null);
-    } else if (call.method.equals(SEEK_METHOD)) {
-      Double positionSecondsDouble = call.argument(POSITION_SECONDS);
-      double positionSeconds = positionSecondsDouble.doubleValue();
-      player.setOnSeekCompleteListener(
-          () -> {
-            result.success(null);
-            // Remove listener to avoid additional calls to result.
-            player.setOnSeekCompleteListener(null);
-          });
-      player.seek(positionSeconds);
-    } else if (call.method.equals(SET_VOLUME_METHOD)) {
-      Double volumeDouble = call.argument(VOLUME);
-      double volume = volumeDouble.doubleValue();
-      player.setVolume(volume);
-      result.success(null);
-    } else if (call.method.equals(PAUSE_METHOD)) {
-      player.pause();
-      result.success(null);
-    } else {
-      result.notImplemented();
     }
+    int excess = livePlayers.size() - maxLive;
+    if (excess <= 0) {
+      return;
+    }
+    Collections.sort(
+        livePlayers, (a, b) -> Long.compare(a.getLastUseTimeMs(), b.getLastUseTimeMs()));
+    for (ManagedMediaPlayer player : livePlayers) {
+      if (excess == 0) {
+        break;
+      }
+      if (player.isEvictable()) {
+        player.evict();
+        evictionCount++;
+        handleEvicted(player.getAudioId());
+        excess--;
+      }
+    }
+  }
+
+  /** Frees what the system can reclaim: idle players, preloaded players and the player pool. */
+  private void onMemoryPressure() {
+    if (mediaPlayers == null) {
+      return;
+    }
+    Log.i(TAG, "Memory pressure; evicting idle players.");
+    evictIdlePlayers(0);
+    preloader.clear();
+    playerPool.clear();
   }
 
+  /**
+   * Applies an ordered list of commands, each a map with a method name and its arguments, and
+   * replies with a list of per-command results once all of them have completed. See {@link
+   * MethodCallBatch}.
+   *
+   * <p>Loads complete asynchronously; commands on an audioId whose load is still in progress are
+   * queued and applied, in order, once it completes, so a batch may load and play the same audio.
+   */
+  private void onExecuteBatch(MethodCall call, Result result) {
+    List<Map<String, ?>> commands = call.argument(BATCH_COMMANDS);
+    if (commands == null) {
+      result.error(ERROR_CODE, "executeBatch needs a list of commands.", null);
+      return;
+    }
+    MethodCallBatch batch = new MethodCallBatch(commands.size(), result);
+    for (int i = 0; i < commands.size(); i++) {
+      Map<String, ?> command = commands.get(i);
+      String method = (String) command.get(BATCH_METHOD);
+      Result commandResult = batch.resultFor(i);
+      if (method == null || method.equals(EXECUTE_BATCH_METHOD)) {
+        commandResult.error(ERROR_CODE, "Invalid batch command: " + method, null);
+        continue;
+      }
+      try {
+        onMethodCall(new MethodCall(method, command.get(BATCH_ARGUMENTS)), commandResult);
+      } catch (RuntimeException e) {
+        commandResult.error(ERROR_CODE, method + " failed: " + e.getMessage(), null);
+      }
+    }
+    batch.onDispatched();
+  }
+
+  /**
+   * Loads a player or mixer clip. Everything but setting up the player itself (asset lookup, media
+   * source construction, decoding) runs on the load executor, and the result is replied once the
+   * player is registered; loads of different audioIds run in parallel.
+   */
   private void onLoad(MethodCall call, Result result) {
     String audioId = call.argument(AUDIO_ID);
     if (audioId == null) {
       result.error(ERROR_CODE, "Received load() call without an audioId", null);
       return;
     }
-    if (mediaPlayers.get(audioId) != null) {
+    if (mediaPlayers.get(audioId) != null
+        || mixerEngine.hasClip(audioId)
+        || pendingLoads.containsKey(audioId)) {
       result.error(ERROR_CODE, "Tried to load an already-loaded player: " + audioId, null);
       return;
     }
 
+    Boolean soundEffectBoolean = call.argument(SOUND_EFFECT);
+    Boolean mixedBoolean = call.argument(MIXED);
+    if ((soundEffectBoolean != null && soundEffectBoolean)
+        || (mixedBoolean != null && mixedBoolean)) {
+      onLoadMixerClip(audioId, soundEffectBoolean != null && soundEffectBoolean, call, result);
+      return;
+    }
+
     Boolean loopingBoolean = call.argument(LOOPING);
     boolean looping = false;
     if (loopingBoolean != null) {
@@ -348,75 +1043,580 @@ public class AudiofileplayerPlugin
       playInBackground = playInBackgroundBoolean.booleanValue();
     }
 
+    ManagedMediaPlayer.LoadStrategy loadStrategy;
     try {
-      if (call.argument(FLUTTER_PATH) != null) {
-        String flutterPath = call.argument(FLUTTER_PATH).toString();
-        AssetManager assetManager = context.getAssets();
-        String key = FlutterLoader.getInstance().getLookupKeyForAsset(flutterPath);
-        AssetFileDescriptor fd = assetManager.openFd(key);
-        if(flutterAssets!=null)
-        Log.d(TAG, "flutterassets are not null");
-        else{
-          Log.d(TAG, "flutterassets are null");
-        }
-        String assetUrl = flutterAssets.getAssetFilePathByName(flutterPath);
+      loadStrategy = loadStrategyFromCall(call);
+    } catch (IllegalArgumentException e) {
+      result.error(ERROR_CODE, e.getMessage(), null);
+      return;
+    }
 
-        Log.d(TAG, "assetUrl" + assetUrl);
-        // find file on assets
-        ExtractorMediaSource extractorMediaSource = new ExtractorMediaSource(Uri.parse("file:///android_asset/" + assetUrl),
-                new DefaultDataSourceFactory(context,"ua"),
-                new DefaultExtractorsFactory(), null, null);
+    boolean lowMemoryBuffering = BUFFER_PROFILE_LOW_MEMORY.equals(call.argument(BUFFER_PROFILE));
+
+    Map<String, ?> arguments = (Map<String, ?>) call.arguments;
+    List<Map<String, ?>> playlist = call.argument(PLAYLIST);
+    if (playlist == null) {
+      String sourceKey = sourceKeyFromArguments(arguments);
+      Preloader.PreloadedPlayer preloadedPlayer =
+          sourceKey == null ? null : preloader.take(sourceKey);
+      if (preloadedPlayer != null) {
+        onLoadPreloaded(
+            audioId,
+            preloadedPlayer,
+            arguments,
+            looping,
+            playInBackground,
+            loadStrategy,
+            lowMemoryBuffering,
+            result);
+        return;
+      }
+      if (arguments.get(FLUTTER_PATH) == null
+          && arguments.get(AUDIO_BYTES) == null
+          && arguments.get(ABSOLUTE_PATH) == null
+          && arguments.get(REMOTE_URL) == null) {
+        result.error(
+            ERROR_CODE,
+            "Could not create ManagedMediaPlayer with no flutterPath, absolutePath, audioBytes, "
+                + "nor remoteUrl.",
+            null);
+        return;
+      }
+    }
+
+    // Other sources take precedence over remoteUrl; see buildMediaSourceFromArguments.
+    String remoteUrl =
+        playlist == null
+                && arguments.get(FLUTTER_PATH) == null
+                && arguments.get(AUDIO_BYTES) == null
+                && arguments.get(ABSOLUTE_PATH) == null
+            ? (String) arguments.get(REMOTE_URL)
+            : null;
+    boolean finalLooping = looping;
+    boolean finalPlayInBackground = playInBackground;
+    PendingLoad pendingLoad = new PendingLoad();
+    pendingLoads.put(audioId, pendingLoad);
+    loadExecutor.execute(
+        () -> {
+          List<MediaSource> mediaSources = new ArrayList<>();
+          try {
+            for (Map<String, ?> source :
+                playlist != null ? playlist : Collections.singletonList(arguments)) {
+              if (source.get(FLUTTER_PATH) != null) {
+                verifyFlutterAssetExists(source.get(FLUTTER_PATH).toString());
+              }
+              mediaSources.add(buildMediaSourceFromArguments(source));
+            }
+          } catch (Exception e) {
+            getPlayerHandler().post(
+                () -> {
+                  if (!finishPendingLoad(audioId, pendingLoad)) {
+                    result.error(ERROR_CODE, "Load was cancelled: " + audioId, null);
+                    return;
+                  }
+                  result.error(
+                      ERROR_CODE, "Could not create ManagedMediaPlayer:" + e.getMessage(), null);
+                  pendingLoad.runQueuedCalls();
+                });
+            return;
+          }
+          // A playlist reports the duration of its first item. Lazy loads do not read the source.
+          MediaInfoProbe.MediaInfo mediaInfo =
+              loadStrategy == ManagedMediaPlayer.LoadStrategy.LAZY
+                  ? null
+                  : playlist == null
+                      ? probeMediaInfo(arguments)
+                      : playlist.isEmpty() ? null : probeMediaInfo(playlist.get(0));
+          getPlayerHandler().post(
+              () ->
+                  onLoadMediaSourcesReady(
+                      audioId,
+                      pendingLoad,
+                      playlist != null,
+                      remoteUrl,
+                      mediaSources,
+                      mediaInfo,
+                      finalLooping,
+                      finalPlayInBackground,
+                      loadStrategy,
+                      lowMemoryBuffering,
+                      result));
+        });
+  }
 
+  /** Completes {@link #onLoad} on the player thread, once its media sources have been built. */
+  private void onLoadMediaSourcesReady(
+      String audioId,
+      PendingLoad pendingLoad,
+      boolean isPlaylist,
+      @Nullable String remoteUrl,
+      List<MediaSource> mediaSources,
+      @Nullable MediaInfoProbe.MediaInfo mediaInfo,
+      boolean looping,
+      boolean playInBackground,
+      ManagedMediaPlayer.LoadStrategy loadStrategy,
+      boolean lowMemoryBuffering,
+      Result result) {
+    if (!finishPendingLoad(audioId, pendingLoad)) {
+      // Released, or the plugin detached, while loading.
+      result.error(ERROR_CODE, "Load was cancelled: " + audioId, null);
+      return;
+    }
+    try {
+      if (isPlaylist) {
+        ManagedMediaPlayer newPlayer =
+            new PlaylistManagedMediaPlayer(
+                audioId, mediaSources, this, looping, playInBackground, context, loadStrategy);
+        newPlayer.setLowMemoryBuffering(lowMemoryBuffering);
+        mediaPlayers.put(audioId, newPlayer);
+        handleLoadedDuration(newPlayer, mediaInfo, loadStrategy);
+        result.success(null);
+      } else if (remoteUrl != null) {
+        RemoteManagedMediaPlayer newPlayer =
+            new RemoteManagedMediaPlayer(
+                audioId, mediaSources.get(0), this, looping, playInBackground, context);
+        newPlayer.setLowMemoryBuffering(lowMemoryBuffering);
+        addRemotePlayer(newPlayer, remoteUrl, result);
+      } else {
         ManagedMediaPlayer newPlayer =
-            new LocalManagedMediaPlayer(audioId, fd, this, looping, playInBackground, context, extractorMediaSource);
-        fd.close();
+            new LocalManagedMediaPlayer(
+                audioId,
+                this,
+                looping,
+                playInBackground,
+                context,
+                mediaSources.get(0),
+                loadStrategy);
+        newPlayer.setLowMemoryBuffering(lowMemoryBuffering);
         mediaPlayers.put(audioId, newPlayer);
-        handleDurationForPlayer(newPlayer, audioId);
+        handleLoadedDuration(newPlayer, mediaInfo, loadStrategy);
         result.success(null);
       }
-//      else if (call.argument(ABSOLUTE_PATH) != null) {
-//        String absolutePath = call.argument(ABSOLUTE_PATH);
-//        ManagedMediaPlayer newPlayer =
-//            new LocalManagedMediaPlayer(audioId, absolutePath, this, looping, playInBackground);
-//        mediaPlayers.put(audioId, newPlayer);
-//        handleDurationForPlayer(newPlayer, audioId);
-//        result.success(null);
-//      } else if (call.argument(AUDIO_BYTES) != null) {
-//        byte[] audioBytes = call.argument(AUDIO_BYTES);
-//        ManagedMediaPlayer newPlayer =
-//            new LocalManagedMediaPlayer(
-//                audioId, audioBytes, this, looping, playInBackground, context);
-//        mediaPlayers.put(audioId, newPlayer);
-//        handleDurationForPlayer(newPlayer, audioId);
-//        result.success(null);
-//      }
-//      else if (call.argument(REMOTE_URL) != null) {
-//        String remoteUrl = call.argument(REMOTE_URL);
-//        // Note that this will throw an exception on invalid URL or lack of network connectivity.
-//        RemoteManagedMediaPlayer newPlayer =
-//            new RemoteManagedMediaPlayer(audioId, remoteUrl, this, looping, playInBackground);
-//        newPlayer.setOnRemoteLoadListener(
-//            (success) -> {
-//              if (success) {
-//                handleDurationForPlayer(newPlayer, audioId);
-//                result.success(null);
-//              } else {
-//                mediaPlayers.remove(audioId);
-//                result.error(ERROR_CODE, "Remote URL loading failed for URL: " + remoteUrl, null);
-//              }
-//            });
-//        // Add player to data structure immediately; will be removed if async loading fails.
-//        mediaPlayers.put(audioId, newPlayer);
-//      } else {
-//        result.error(
-//            ERROR_CODE,
-//            "Could not create ManagedMediaPlayer with no flutterPath, audioBytes, nor remoteUrl.",
-//            null);
-//        return;
-//      }
     } catch (Exception e) {
       result.error(ERROR_CODE, "Could not create ManagedMediaPlayer:" + e.getMessage(), null);
     }
+    evictIdlePlayers(maxLivePlayers);
+    pendingLoad.runQueuedCalls();
+  }
+
+  /**
+   * Completes {@link #onLoad} with a player prepared by {@link #onPreload}, choosing the player
+   * class and applying the load strategy as for other loads.
+   */
+  private void onLoadPreloaded(
+      String audioId,
+      Preloader.PreloadedPlayer preloadedPlayer,
+      Map<String, ?> arguments,
+      boolean looping,
+      boolean playInBackground,
+      ManagedMediaPlayer.LoadStrategy loadStrategy,
+      boolean lowMemoryBuffering,
+      Result result) {
+    // Other sources take precedence over remoteUrl, as in sourceKeyFromArguments.
+    String remoteUrl =
+        arguments.get(FLUTTER_PATH) == null && arguments.get(ABSOLUTE_PATH) == null
+            ? (String) arguments.get(REMOTE_URL)
+            : null;
+    if (remoteUrl != null) {
+      RemoteManagedMediaPlayer newPlayer =
+          new RemoteManagedMediaPlayer(
+              audioId, preloadedPlayer, this, looping, playInBackground, context);
+      newPlayer.setLowMemoryBuffering(lowMemoryBuffering);
+      addRemotePlayer(newPlayer, remoteUrl, result);
+      evictIdlePlayers(maxLivePlayers);
+      return;
+    }
+    ManagedMediaPlayer newPlayer =
+        new LocalManagedMediaPlayer(
+            audioId, preloadedPlayer, this, looping, playInBackground, context, loadStrategy);
+    newPlayer.setLowMemoryBuffering(lowMemoryBuffering);
+    mediaPlayers.put(audioId, newPlayer);
+    evictIdlePlayers(maxLivePlayers);
+    result.success(null);
+    if (loadStrategy == ManagedMediaPlayer.LoadStrategy.LAZY) {
+      handleLoadedDuration(newPlayer, null, loadStrategy);
+      return;
+    }
+    loadExecutor.execute(
+        () -> {
+          MediaInfoProbe.MediaInfo mediaInfo = probeMediaInfo(arguments);
+          getPlayerHandler().post(() -> handleLoadedDuration(newPlayer, mediaInfo, loadStrategy));
+        });
+  }
+
+  /**
+   * Registers a remote player, which replies to the load once ready, or is removed again and
+   * replies with an error if loading fails.
+   */
+  private void addRemotePlayer(
+      RemoteManagedMediaPlayer newPlayer, String remoteUrl, Result result) {
+    String audioId = newPlayer.getAudioId();
+    // Add player to data structure immediately; will be removed if async loading fails.
+    mediaPlayers.put(audioId, newPlayer);
+    newPlayer.setOnRemoteLoadListener(
+        (success) -> {
+          if (success) {
+            handleDurationForPlayer(newPlayer, audioId, null);
+            result.success(null);
+          } else {
+            mediaPlayers.remove(audioId);
+            newPlayer.release();
+            result.error(ERROR_CODE, "Remote URL loading failed for URL: " + remoteUrl, null);
+          }
+        });
+  }
+
+  /**
+   * Reports the duration of a newly loaded local player. Without header information, players which
+   * are not acquired at load report it once ready instead.
+   */
+  private void handleLoadedDuration(
+      ManagedMediaPlayer player,
+      @Nullable MediaInfoProbe.MediaInfo mediaInfo,
+      ManagedMediaPlayer.LoadStrategy loadStrategy) {
+    if (mediaInfo == null && loadStrategy != ManagedMediaPlayer.LoadStrategy.DEFAULT) {
+      player.reportDurationWhenReady();
+      return;
+    }
+    handleDurationForPlayer(player, player.getAudioId(), mediaInfo);
+  }
+
+  private static ManagedMediaPlayer.LoadStrategy loadStrategyFromCall(MethodCall call) {
+    String loadStrategy = call.argument(LOAD_STRATEGY);
+    if (loadStrategy == null) {
+      return ManagedMediaPlayer.LoadStrategy.DEFAULT;
+    }
+    switch (loadStrategy) {
+      case LOAD_STRATEGY_LAZY:
+        return ManagedMediaPlayer.LoadStrategy.LAZY;
+      case LOAD_STRATEGY_METADATA_ONLY:
+        return ManagedMediaPlayer.LoadStrategy.METADATA_ONLY;
+      case LOAD_STRATEGY_PREPARED:
+        return ManagedMediaPlayer.LoadStrategy.PREPARED;
+      default:
+        throw new IllegalArgumentException("Unknown load strategy: " + loadStrategy);
+    }
+  }
+
+  /**
+   * Decodes a flutterPath or absolutePath source into PCM held by the {@link MixerEngine}, subject
+   * to its memory cap, as either a sound effect or a mixed source.
+   */
+  private void onLoadMixerClip(
+      String audioId, boolean soundEffect, MethodCall call, Result result) {
+    String flutterPath = call.argument(FLUTTER_PATH);
+    String absolutePath = call.argument(ABSOLUTE_PATH);
+    if (flutterPath == null && absolutePath == null) {
+      result.error(ERROR_CODE, "Mixer clips need a flutterPath or absolutePath.", null);
+      return;
+    }
+    Boolean loopingBoolean = call.argument(LOOPING);
+    boolean looping = !soundEffect && loopingBoolean != null && loopingBoolean;
+    MixerEngine engine = mixerEngine;
+    PendingLoad pendingLoad = new PendingLoad();
+    pendingLoads.put(audioId, pendingLoad);
+    loadExecutor.execute(
+        () -> {
+          MediaExtractor extractor = new MediaExtractor();
+          try {
+            if (flutterPath != null) {
+              String key = FlutterLoader.getInstance().getLookupKeyForAsset(flutterPath);
+              AssetFileDescriptor fd = context.getAssets().openFd(key);
+              extractor.setDataSource(
+                  fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+              fd.close();
+            } else {
+              extractor.setDataSource(absolutePath);
+            }
+          } catch (Exception e) {
+            extractor.release();
+            onLoadMixerClipFailed(
+                audioId, pendingLoad, "Could not open mixer clip:" + e.getMessage(), result);
+            return;
+          }
+
+          PcmClip clip;
+          try {
+            clip =
+                PcmDecoder.decode(extractor, engine.getSampleRate(), engine.getRemainingBytes());
+          } catch (Exception e) {
+            onLoadMixerClipFailed(
+                audioId, pendingLoad, "Could not load mixer clip:" + e.getMessage(), result);
+            return;
+          }
+          getPlayerHandler().post(
+              () -> {
+                if (!finishPendingLoad(audioId, pendingLoad)) {
+                  result.error(ERROR_CODE, "Load was cancelled: " + audioId, null);
+                  return;
+                }
+                try {
+                  engine.addClip(audioId, clip, soundEffect, looping);
+                  handleDuration(audioId, clip.getDurationSeconds(), null);
+                  result.success(null);
+                } catch (IllegalStateException e) {
+                  result.error(ERROR_CODE, "Could not load mixer clip:" + e.getMessage(), null);
+                }
+                pendingLoad.runQueuedCalls();
+              });
+        });
+  }
+
+  /**
+   * Moves the players onto a dedicated playback thread, or back onto the main thread, so that
+   * ExoPlayer's callbacks and the position ticker do not compete with the platform thread. Only
+   * allowed while no players are loaded or loading.
+   */
+  private void onConfigurePlaybackThread(MethodCall call, Result result) {
+    Boolean dedicatedBoolean = call.argument(DEDICATED_PLAYBACK_THREAD);
+    boolean dedicated = dedicatedBoolean != null && dedicatedBoolean;
+    if (dedicated == (playbackThread != null)) {
+      result.success(null);
+      return;
+    }
+    if (!mediaPlayers.isEmpty() || !pendingLoads.isEmpty()) {
+      result.error(
+          ERROR_CODE, "The playback thread can only be changed while no players are loaded.", null);
+      return;
+    }
+    // Idle and preloaded players belong to the old looper.
+    Preloader oldPreloader = preloader;
+    PlayerPool oldPlayerPool = playerPool;
+    HandlerThread oldPlaybackThread = playbackThread;
+    runOnPlayerThread(
+        () -> {
+          oldPreloader.clear();
+          oldPlayerPool.clear();
+          if (oldPlaybackThread != null) {
+            oldPlaybackThread.quitSafely();
+          }
+        });
+    if (dedicated) {
+      playbackThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_AUDIO);
+      playbackThread.start();
+      playbackHandler = new Handler(playbackThread.getLooper());
+    } else {
+      playbackThread = null;
+      playbackHandler = null;
+    }
+    playerPool =
+        new PlayerPool(
+            context, oldPlayerPool.getMaxSize(), getPlayerHandler().getLooper(), bufferBudget);
+    preloader = new Preloader(playerPool);
+    long defaultIntervalMs = positionTicker.getDefaultIntervalMs();
+    positionTicker = new PositionTicker(getPlayerHandler(), this);
+    positionTicker.setDefaultIntervalMs(defaultIntervalMs);
+    result.success(null);
+  }
+
+  private void onLoadMixerClipFailed(
+      String audioId, PendingLoad pendingLoad, String message, Result result) {
+    getPlayerHandler().post(
+        () -> {
+          if (!finishPendingLoad(audioId, pendingLoad)) {
+            result.error(ERROR_CODE, "Load was cancelled: " + audioId, null);
+            return;
+          }
+          result.error(ERROR_CODE, message, null);
+          pendingLoad.runQueuedCalls();
+        });
+  }
+
+  /**
+   * Removes {@code pendingLoad} from {@link #pendingLoads}, and returns whether it was still there,
+   * i.e. neither released, replaced by a later load of the same id, nor dropped on detach. Called
+   * on the player thread.
+   */
+  private boolean finishPendingLoad(String audioId, PendingLoad pendingLoad) {
+    if (pendingLoads.get(audioId) != pendingLoad) {
+      return false;
+    }
+    pendingLoads.remove(audioId);
+    return true;
+  }
+
+  /** A load in progress, and the player method calls made on its audioId meanwhile. */
+  private static final class PendingLoad {
+    private final List<Runnable> queuedCalls = new ArrayList<>();
+
+    void queueCall(Runnable call) {
+      queuedCalls.add(call);
+    }
+
+    /**
+     * Applies the queued calls in order, once the load has completed, failed or been cancelled; in
+     * the latter cases each call fails as made on an unloaded player.
+     */
+    void runQueuedCalls() {
+      for (Runnable call : queuedCalls) {
+        call.run();
+      }
+      queuedCalls.clear();
+    }
+  }
+
+  private void onMixerClipSetVolume(String audioId, MethodCall call, Result result) {
+    Double volumeDouble = call.argument(VOLUME);
+    mixerEngine.setVolume(audioId, volumeDouble.doubleValue());
+    result.success(null);
+  }
+
+  private void onMixerClipRelease(String audioId, MethodCall call, Result result) {
+    mixerEngine.removeClip(audioId);
+    releaseEventHandle(audioId);
+    result.success(null);
+  }
+
+  /**
+   * Prepares each of a list of sources (each a map holding a flutterPath, absolutePath or
+   * remoteUrl, as for load) with an inaudible player, so that a later load of the same source
+   * starts from buffered data. See {@link Preloader}.
+   *
+   * <p>Media sources are built on the load executor, since building a remote source reads the
+   * {@link RemoteAudioCache} from disk; the players are then prepared on the player thread.
+   */
+  private void onPreload(MethodCall call, Result result) {
+    List<Map<String, ?>> sources = call.argument(SOURCES);
+    if (sources == null) {
+      result.error(ERROR_CODE, "Received preload() call without sources", null);
+      return;
+    }
+    Map<String, Map<String, ?>> sourcesByKey = new LinkedHashMap<>();
+    for (Map<String, ?> source : sources) {
+      String sourceKey = sourceKeyFromArguments(source);
+      if (sourceKey == null) {
+        Log.w(TAG, "Skipping preload of a source without flutterPath, absolutePath or remoteUrl.");
+        continue;
+      }
+      if (!preloader.isPreloaded(sourceKey)) {
+        sourcesByKey.put(sourceKey, source);
+      }
+    }
+    if (sourcesByKey.isEmpty()) {
+      result.success(null);
+      return;
+    }
+    loadExecutor.execute(
+        () -> {
+          Map<String, MediaSource> mediaSources = new LinkedHashMap<>();
+          for (Map.Entry<String, Map<String, ?>> entry : sourcesByKey.entrySet()) {
+            try {
+              mediaSources.put(entry.getKey(), buildMediaSourceFromArguments(entry.getValue()));
+            } catch (Exception e) {
+              Log.w(TAG, "Could not preload " + entry.getKey(), e);
+            }
+          }
+          getPlayerHandler()
+              .post(
+                  () -> {
+                    if (methodChannel == null) {
+                      // Detached while building; the preloader has been released.
+                      return;
+                    }
+                    for (Map.Entry<String, MediaSource> entry : mediaSources.entrySet()) {
+                      preloader.preload(entry.getKey(), entry.getValue());
+                    }
+                    result.success(null);
+                  });
+        });
+  }
+
+  /**
+   * Returns a handler which applies {@code edit} to a player loaded with a playlist, and replies
+   * with an error for other players or if the edit fails.
+   */
+  private static PlayerMethodHandler playlistEditHandler(PlaylistEditHandler edit) {
+    return (player, call, result) -> {
+      if (!(player instanceof PlaylistManagedMediaPlayer)) {
+        result.error(
+            ERROR_CODE,
+            String.format(
+                "Called %s on a player without a playlist: %s", call.method, player.getAudioId()),
+            null);
+        return;
+      }
+      try {
+        edit.edit((PlaylistManagedMediaPlayer) player, call);
+        result.success(null);
+      } catch (Exception e) {
+        result.error(ERROR_CODE, "Could not edit playlist: " + e.getMessage(), null);
+      }
+    };
+  }
+
+  /**
+   * Returns a key identifying the source in load or preload arguments, or null if the source is
+   * not one that can be preloaded (i.e. audio bytes).
+   */
+  private static String sourceKeyFromArguments(Map<String, ?> arguments) {
+    if (arguments.get(FLUTTER_PATH) != null) {
+      return FLUTTER_PATH + ":" + arguments.get(FLUTTER_PATH);
+    } else if (arguments.get(AUDIO_BYTES) != null) {
+      return null;
+    } else if (arguments.get(ABSOLUTE_PATH) != null) {
+      return ABSOLUTE_PATH + ":" + arguments.get(ABSOLUTE_PATH);
+    } else if (arguments.get(REMOTE_URL) != null) {
+      return REMOTE_URL + ":" + arguments.get(REMOTE_URL);
+    }
+    return null;
+  }
+
+  /** Builds the media source for a flutterPath, absolutePath or remoteUrl source. */
+  private MediaSource buildMediaSourceFromArguments(Map<String, ?> arguments) {
+    if (arguments.get(FLUTTER_PATH) != null) {
+      return ManagedMediaPlayer.buildMediaSource(
+          flutterAssetUri(arguments.get(FLUTTER_PATH).toString()),
+          new DefaultDataSourceFactory(context, "ua"));
+    } else if (arguments.get(AUDIO_BYTES) != null) {
+      Object name = arguments.get(AUDIO_ID);
+      return LocalManagedMediaPlayer.buildBytesMediaSource(
+          name != null ? name.toString() : "audioBytes", (byte[]) arguments.get(AUDIO_BYTES));
+    } else if (arguments.get(ABSOLUTE_PATH) != null) {
+      return LocalManagedMediaPlayer.buildFileMediaSource(
+          arguments.get(ABSOLUTE_PATH).toString());
+    } else if (arguments.get(REMOTE_URL) != null) {
+      return ManagedMediaPlayer.buildMediaSource(
+          Uri.parse(arguments.get(REMOTE_URL).toString()),
+          RemoteAudioCache.get(context).dataSourceFactory());
+    }
+    throw new IllegalArgumentException("No flutterPath, absolutePath, audioBytes, nor remoteUrl.");
+  }
+
+  /**
+   * Reads the header information of a flutterPath or absolutePath source, from the persistent
+   * index if the source is unchanged since it was last probed. Returns null for other sources. Does
+   * disk I/O, so is called off the main thread.
+   */
+  @Nullable
+  private MediaInfoProbe.MediaInfo probeMediaInfo(Map<String, ?> arguments) {
+    if (arguments.get(FLUTTER_PATH) != null) {
+      return mediaInfoProbe.probeFlutterAsset(arguments.get(FLUTTER_PATH).toString());
+    } else if (arguments.get(AUDIO_BYTES) == null && arguments.get(ABSOLUTE_PATH) != null) {
+      return mediaInfoProbe.probeFile(arguments.get(ABSOLUTE_PATH).toString());
+    }
+    return null;
+  }
+
+  /**
+   * Throws if {@code flutterPath} names no (uncompressed) asset. Does disk I/O, so is called off
+   * the main thread.
+   */
+  private void verifyFlutterAssetExists(String flutterPath) throws IOException {
+    String key = FlutterLoader.getInstance().getLookupKeyForAsset(flutterPath);
+    context.getAssets().openFd(key).close();
+  }
+
+  /** Uri from which ExoPlayer reads a Flutter asset, which is packaged as an Android asset. */
+  private Uri flutterAssetUri(String flutterPath) {
+    return Uri.parse("file:///android_asset/" + flutterAssets.getAssetFilePathByName(flutterPath));
+  }
+
+  /** Reads the position update interval from a call; a null interval restores the default. */
+  private static long positionUpdateIntervalMsFromCall(MethodCall call) {
+    Double intervalSecondsDouble = call.argument(POSITION_UPDATE_INTERVAL_SECONDS);
+    return intervalSecondsDouble == null
+        ? 0
+        : (long) Math.floor(intervalSecondsDouble.doubleValue() * 1000);
   }
 
   private ManagedMediaPlayer getAndVerifyPlayer(MethodCall call, Result result) {
@@ -436,29 +1636,280 @@ public class AudiofileplayerPlugin
     return player;
   }
 
+  /** Pool from which {@link ManagedMediaPlayer}s acquire, and to which they return, players. */
+  PlayerPool getPlayerPool() {
+    return playerPool;
+  }
+
+  PluginStats getPluginStats() {
+    return pluginStats;
+  }
+
+  /**
+   * Returns the {@link PluginStats}, plus the number of loaded and live (holding an ExoPlayer)
+   * players and an estimate of buffer memory: ExoPlayer buffers plus decoded mixer clips.
+   */
+  private Map<String, Object> getStats() {
+    Map<String, Object> stats = pluginStats.toMap();
+    int livePlayerCount = 0;
+    for (ManagedMediaPlayer player : mediaPlayers.values()) {
+      if (player.hasPlayer()) {
+        livePlayerCount++;
+      }
+    }
+    long playerBufferBytes = bufferBudget.getAllocatedBytes();
+    long mixerBufferBytes = mixerEngine.getMemoryUsedBytes();
+    stats.put("loadedPlayers", mediaPlayers.size());
+    stats.put("livePlayers", livePlayerCount);
+    stats.put("playerBufferBytes", playerBufferBytes);
+    stats.put("mixerBufferBytes", mixerBufferBytes);
+    stats.put("estimatedBufferBytes", playerBufferBytes + mixerBufferBytes);
+    return stats;
+  }
+
+  /**
+   * Runs {@code runnable} on the main thread, on which channel messages must be sent: immediately
+   * if already on it, otherwise posted. Dropped once the plugin has detached.
+   */
+  private void runOnMainThread(Runnable runnable) {
+    Runnable guarded =
+        () -> {
+          if (methodChannel != null) {
+            runnable.run();
+          }
+        };
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      guarded.run();
+    } else {
+      mainHandler.post(guarded);
+    }
+  }
+
+  /**
+   * Runs {@code runnable} on the thread hosting the players (the playback thread if enabled,
+   * otherwise the main thread): immediately if already on it, otherwise posted.
+   */
+  private void runOnPlayerThread(Runnable runnable) {
+    Handler handler = getPlayerHandler();
+    if (Looper.myLooper() == handler.getLooper()) {
+      runnable.run();
+    } else {
+      handler.post(runnable);
+    }
+  }
+
+  /** Handler of the thread hosting the players. */
+  private Handler getPlayerHandler() {
+    return playbackHandler != null ? playbackHandler : mainHandler;
+  }
+
+  /**
+   * Drops the binary codec's handle for a released player. Runs on the main thread, like the
+   * codec's other uses, after any events for the player which are already posted there.
+   */
+  private void releaseEventHandle(String audioId) {
+    runOnMainThread(
+        () -> {
+          if (binaryEventCodec != null) {
+            binaryEventCodec.release(audioId);
+          }
+        });
+  }
+
+  /** Shared scheduler for position reports of all playing {@link ManagedMediaPlayer}s. */
+  PositionTicker getPositionTicker() {
+    return positionTicker;
+  }
+
+  /** Called by {@link PlaylistManagedMediaPlayer} when playback moves to another item. */
+  void handlePlaylistTransition(String audioId, int playlistIndex) {
+    runOnMainThread(
+        () -> {
+          if (binaryEventCodec != null) {
+            eventChannel.send(binaryEventCodec.encodePlaylistTransition(audioId, playlistIndex));
+            return;
+          }
+          Map<String, Object> arguments = new HashMap<String, Object>();
+          arguments.put(AUDIO_ID, audioId);
+          arguments.put(PLAYLIST_INDEX, playlistIndex);
+          this.methodChannel.invokeMethod(ON_PLAYLIST_TRANSITION_CALLBACK, arguments);
+        });
+  }
+
   /** Called by {@link ManagedMediaPlayer} when (non-looping) file has finished playback. */
   public void handleCompletion(String audioId) {
-    this.methodChannel.invokeMethod(
-        ON_COMPLETE_CALLBACK, Collections.singletonMap(AUDIO_ID, audioId));
+    runOnMainThread(
+        () -> {
+          if (binaryEventCodec != null) {
+            eventChannel.send(binaryEventCodec.encodeComplete(audioId));
+            return;
+          }
+          this.methodChannel.invokeMethod(
+              ON_COMPLETE_CALLBACK, Collections.singletonMap(AUDIO_ID, audioId));
+        });
   }
 
-  // Called on successful load.
-  public void handleDurationForPlayer(ManagedMediaPlayer player, String audioId) {
-    Map<String, Object> arguments = new HashMap<String, Object>();
-    arguments.put(AUDIO_ID, audioId);
+  /**
+   * Called on successful load, with the source's probed header information if available. Otherwise
+   * the player's duration is reported, which is only known once the player is prepared.
+   */
+  public void handleDurationForPlayer(
+      ManagedMediaPlayer player, String audioId, @Nullable MediaInfoProbe.MediaInfo mediaInfo) {
+    if (mediaInfo != null) {
+      handleDuration(audioId, mediaInfo.getDurationSeconds(), mediaInfo);
+      return;
+    }
     // Note that player will report a negative value if duration is unavailable (for example,
     // streaming certain types of remote audio).
-    double durationSeconds = player.getDurationSeconds();
-    arguments.put(DURATION_SECONDS, Double.valueOf(durationSeconds));
-    this.methodChannel.invokeMethod(ON_DURATION_CALLBACK, arguments);
+    handleDuration(audioId, player.getDurationSeconds(), null);
   }
 
-  /** Called repeatedly by {@link ManagedMediaPlayer} during playback. */
+  /** Reports that a player's underlying ExoPlayer was released; see {@link #evictIdlePlayers}. */
+  private void handleEvicted(String audioId) {
+    runOnMainThread(
+        () -> {
+          if (binaryEventCodec != null) {
+            eventChannel.send(binaryEventCodec.encodeEvicted(audioId));
+            return;
+          }
+          this.methodChannel.invokeMethod(
+              ON_EVICTED_CALLBACK, Collections.singletonMap(AUDIO_ID, audioId));
+        });
+  }
+
+  /** Reports that a player loaded with the prepared load strategy is ready to play. */
+  void handleReady(String audioId) {
+    runOnMainThread(
+        () -> {
+          if (binaryEventCodec != null) {
+            eventChannel.send(binaryEventCodec.encodeReady(audioId));
+            return;
+          }
+          this.methodChannel.invokeMethod(
+              ON_READY_CALLBACK, Collections.singletonMap(AUDIO_ID, audioId));
+        });
+  }
+
+  private void handleDuration(
+      String audioId, double durationSeconds, @Nullable MediaInfoProbe.MediaInfo mediaInfo) {
+    runOnMainThread(
+        () -> {
+          if (binaryEventCodec != null) {
+            eventChannel.send(binaryEventCodec.encodeDuration(audioId, durationSeconds));
+            return;
+          }
+          Map<String, Object> arguments = new HashMap<String, Object>();
+          arguments.put(AUDIO_ID, audioId);
+          arguments.put(DURATION_SECONDS, Double.valueOf(durationSeconds));
+          if (mediaInfo != null) {
+            arguments.put(SAMPLE_RATE, mediaInfo.sampleRate);
+            arguments.put(CHANNEL_COUNT, mediaInfo.channelCount);
+          }
+          this.methodChannel.invokeMethod(ON_DURATION_CALLBACK, arguments);
+        });
+  }
+
+  /**
+   * Switches position reporting mode, moving playing players onto or off the {@link
+   * PositionTicker}. Entering anchor mode sends a fresh anchor for every loaded player.
+   */
+  private void setPositionReportingMode(String mode) {
+    positionReportingMode = mode;
+    boolean anchor = isAnchorPositionReporting();
+    for (ManagedMediaPlayer player : mediaPlayers.values()) {
+      if (anchor || !player.isPlaying()) {
+        positionTicker.stop(player);
+      } else {
+        positionTicker.start(player);
+      }
+      handlePositionAnchor(player);
+    }
+  }
+
+  /** Whether positions are reported only as anchors on playback changes, instead of polled. */
+  boolean isAnchorPositionReporting() {
+    return POSITION_REPORTING_ANCHOR.equals(positionReportingMode);
+  }
+
+  /**
+   * Called by {@link ManagedMediaPlayer} whenever the way its position advances changes. In anchor
+   * mode, sends the position together with a monotonic timestamp ({@link
+   * SystemClock#elapsedRealtime()}) and the rate at which the position advances (0 unless
+   * playing), from which Dart extrapolates the current position.
+   */
+  void handlePositionAnchor(ManagedMediaPlayer player) {
+    if (!isAnchorPositionReporting()) {
+      return;
+    }
+    // Read on the player's thread; sent on the main thread.
+    String audioId = player.getAudioId();
+    double positionSeconds = player.getPositionSeconds();
+    long anchorTimestampMs = SystemClock.elapsedRealtime();
+    double playbackSpeed = player.getEffectivePlaybackSpeed();
+    runOnMainThread(
+        () -> {
+          if (binaryEventCodec != null) {
+            eventChannel.send(
+                binaryEventCodec.encodePositionAnchor(
+                    audioId, positionSeconds, anchorTimestampMs, playbackSpeed));
+            return;
+          }
+          Map<String, Object> arguments = new HashMap<String, Object>();
+          arguments.put(AUDIO_ID, audioId);
+          arguments.put(POSITION_SECONDS, positionSeconds);
+          arguments.put(ANCHOR_TIMESTAMP_MS, anchorTimestampMs);
+          arguments.put(PLAYBACK_SPEED, playbackSpeed);
+          this.methodChannel.invokeMethod(ON_POSITION_ANCHOR_CALLBACK, arguments);
+        });
+  }
+
+  /**
+   * Called by {@link PositionTicker} on each tick with the players due a position report.
+   *
+   * <p>In batched mode, sends a single message holding parallel lists of audio ids and positions
+   * (the latter as a double[], which the standard codec sends as a packed Float64List). Otherwise
+   * sends one {@link #ON_POSITION_CALLBACK} message per player.
+   */
+  void handlePositions(List<ManagedMediaPlayer> players) {
+    if (!POSITION_REPORTING_BATCHED.equals(positionReportingMode)) {
+      for (ManagedMediaPlayer player : players) {
+        handlePosition(player.getAudioId(), player.getPositionSeconds());
+      }
+      return;
+    }
+    List<String> audioIds = new ArrayList<>(players.size());
+    double[] positionsSeconds = new double[players.size()];
+    for (int i = 0; i < players.size(); i++) {
+      ManagedMediaPlayer player = players.get(i);
+      audioIds.add(player.getAudioId());
+      positionsSeconds[i] = player.getPositionSeconds();
+    }
+    runOnMainThread(
+        () -> {
+          if (binaryEventCodec != null) {
+            eventChannel.send(binaryEventCodec.encodePositions(audioIds, positionsSeconds));
+            return;
+          }
+          Map<String, Object> arguments = new HashMap<String, Object>();
+          arguments.put(AUDIO_IDS, audioIds);
+          arguments.put(POSITIONS_SECONDS, positionsSeconds);
+          this.methodChannel.invokeMethod(ON_POSITIONS_CALLBACK, arguments);
+        });
+  }
+
+  /** Sends the position of a single player during playback. */
   public void handlePosition(String audioId, double positionSeconds) {
-    Map<String, Object> arguments = new HashMap<String, Object>();
-    arguments.put(AUDIO_ID, audioId);
-    arguments.put(POSITION_SECONDS, Double.valueOf(positionSeconds));
-    this.methodChannel.invokeMethod(ON_POSITION_CALLBACK, arguments);
+    runOnMainThread(
+        () -> {
+          if (binaryEventCodec != null) {
+            eventChannel.send(binaryEventCodec.encodePosition(audioId, positionSeconds));
+            return;
+          }
+          Map<String, Object> arguments = new HashMap<String, Object>();
+          arguments.put(AUDIO_ID, audioId);
+          arguments.put(POSITION_SECONDS, Double.valueOf(positionSeconds));
+          this.methodChannel.invokeMethod(ON_POSITION_CALLBACK, arguments);
+        });
   }
 
   /**
@@ -468,10 +1919,25 @@ public class AudiofileplayerPlugin
    * is disposed and that there will be no further messages over the method channel.
    */
   private void onDestroy() {
-    for (ManagedMediaPlayer player : mediaPlayers.values()) {
-      player.release();
-    }
-    mediaPlayers.clear();
+    runOnPlayerThread(
+        () -> {
+          if (mediaPlayers == null) {
+            return;
+          }
+          for (ManagedMediaPlayer player : mediaPlayers.values()) {
+            player.release();
+          }
+          mediaPlayers.clear();
+          preloader.clear();
+          playerPool.clear();
+          mixerEngine.release();
+          mixerEngine = createMixerEngine();
+        });
+  }
+
+  private MixerEngine createMixerEngine() {
+    // handleCompletion posts to the main thread itself.
+    return new MixerEngine(context, this::handleCompletion);
   }
 
   private static class LifecycleCallbacks implements Application.ActivityLifecycleCallbacks {
@@ -603,6 +2069,11 @@ public class AudiofileplayerPlugin
       return;
     }
     //it should not be null
+    if (binaryEventCodec != null) {
+      String mediaEventType = eventCodeToMediaEventString(keyCode);
+      eventChannel.send(binaryEventCodec.encodeMediaEvent(mediaEventType, Double.NaN, null));
+      return;
+    }
     Map<String, Object> arguments = new HashMap<>();
     arguments.put(MEDIA_EVENT_TYPE, eventCodeToMediaEventString(keyCode));
     methodChannel.invokeMethod(ON_MEDIA_EVENT_CALLBACK, arguments);
@@ -611,6 +2082,13 @@ public class AudiofileplayerPlugin
   @Override
   public void onCustomMediaButtonClick(String eventId) {
     Log.i(TAG, "onCustomMediaButtonClick()");
+    if (methodChannel == null) {
+      return;
+    }
+    if (binaryEventCodec != null) {
+      eventChannel.send(binaryEventCodec.encodeMediaEvent(MEDIA_CUSTOM, Double.NaN, eventId));
+      return;
+    }
     Map<String, Object> arguments = new HashMap<>();
     arguments.put(MEDIA_EVENT_TYPE, MEDIA_CUSTOM);
     arguments.put(MEDIA_CUSTOM_EVENT_ID, eventId);
@@ -620,17 +2098,83 @@ public class AudiofileplayerPlugin
   @Override
   public void onSeekTo(long positionMs) {
     Log.i(TAG, "onSeekTo()");
+    if (methodChannel == null) {
+      return;
+    }
     double positionSeconds = positionMs / 1000.0;
+    if (binaryEventCodec != null) {
+      eventChannel.send(binaryEventCodec.encodeMediaEvent(MEDIA_SEEK_TO, positionSeconds, null));
+      return;
+    }
     Map<String, Object> arguments = new HashMap<>();
     arguments.put(MEDIA_EVENT_TYPE, MEDIA_SEEK_TO);
     arguments.put(MEDIA_SEEK_TO_POSITION_SECONDS, positionSeconds);
     methodChannel.invokeMethod(ON_MEDIA_EVENT_CALLBACK, arguments);
   }
 
+  /**
+   * Publishes metadata to the service once its artwork, if any, has been loaded off the main
+   * thread. Artwork is taken from metadataArtBytes, metadataArtFilePath, metadataArtFlutterPath or
+   * metadataArtUri, in that order. Metadata identical to that last published is not re-sent.
+   */
+  private void onSetMetadata(Map<String, ?> map) {
+    int generation = ++metadataGeneration;
+    ArtworkLoader.Callback callback =
+        artwork -> {
+          if (generation == metadataGeneration) {
+            publishMetadata(map, artwork);
+          }
+        };
+    if (map.get(METADATA_ART_BYTES) != null) {
+      artworkLoader.loadBytes((byte[]) map.get(METADATA_ART_BYTES), callback);
+    } else if (map.get(METADATA_ART_FILE_PATH) != null) {
+      artworkLoader.loadFile((String) map.get(METADATA_ART_FILE_PATH), callback);
+    } else if (map.get(METADATA_ART_FLUTTER_PATH) != null) {
+      artworkLoader.loadFlutterAsset((String) map.get(METADATA_ART_FLUTTER_PATH), callback);
+    } else if (map.get(METADATA_ART_URI) != null) {
+      artworkLoader.loadUri((String) map.get(METADATA_ART_URI), callback);
+    } else {
+      publishMetadata(map, null);
+    }
+  }
+
+  private void publishMetadata(Map<String, ?> map, @Nullable ArtworkLoader.Artwork artwork) {
+    AudiofileplayerService service = AudiofileplayerService.instance;
+    if (service == null) {
+      Log.w(TAG, "Dropping metadata; media service is not running.");
+      return;
+    }
+    Map<String, Object> fields = new HashMap<>(map);
+    fields.remove(METADATA_ART_BYTES);
+    if (service == publishedMetadataService
+        && artwork == publishedArtwork
+        && fields.equals(publishedMetadataFields)) {
+      return;
+    }
+    publishedMetadataService = service;
+    publishedArtwork = artwork;
+    publishedMetadataFields = fields;
+    service.setMetadata(mapToMetadata(map, artwork));
+  }
+
   // static conversion utility methods.
 
-  /** Converts a Map of metadata entries (from Dart) into a {@link MediaMetadataCompat}. */
-  static MediaMetadataCompat mapToMetadata(Map<String, ?> map) {
+  /**
+   * Converts a Map of metadata entries (from Dart), plus artwork already decoded from them, into a
+   * {@link MediaMetadataCompat}.
+   */
+  static MediaMetadataCompat mapToMetadata(
+      Map<String, ?> map, @Nullable ArtworkLoader.Artwork artwork) {
+    boolean traced = Tracing.begin(Tracing.MAP_TO_METADATA);
+    try {
+      return buildMetadata(map, artwork);
+    } finally {
+      Tracing.end(traced);
+    }
+  }
+
+  private static MediaMetadataCompat buildMetadata(
+      Map<String, ?> map, @Nullable ArtworkLoader.Artwork artwork) {
     MediaMetadataCompat.Builder builder = new MediaMetadataCompat.Builder();
     if (map.containsKey(METADATA_ID)) {
       builder.putString(MediaMetadataCompat.METADATA_KEY_MEDIA_ID, (String) map.get(METADATA_ID));
@@ -653,11 +2197,9 @@ public class AudiofileplayerPlugin
       Long durationMsLong = (long) Math.floor(durationSecondsDouble * 1000);
       builder.putLong(MediaMetadataCompat.METADATA_KEY_DURATION, durationMsLong);
     }
-    if (map.containsKey(METADATA_ART_BYTES)) {
-      byte[] artBytes = (byte[]) map.get(METADATA_ART_BYTES);
-      Bitmap bitmap = BitmapFactory.decodeByteArray(artBytes, 0, artBytes.length);
-      builder.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, bitmap);
-      builder.putBitmap(MediaMetadataCompat.METADATA_KEY_DISPLAY_ICON, bitmap);
+    if (artwork != null) {
+      builder.putBitmap(MediaMetadataCompat.METADATA_KEY_ALBUM_ART, artwork.albumArt);
+      builder.putBitmap(MediaMetadataCompat.METADATA_KEY_DISPLAY_ICON, artwork.displayIcon);
     }
     return builder.build();
   }
@@ -673,50 +2215,56 @@ public class AudiofileplayerPlugin
         return new NotificationCompat.Action(
             R.drawable.ic_pause_black_36dp,
             context.getString(R.string.pause),
-            MediaButtonReceiver.buildMediaButtonPendingIntent(
-                context, PlaybackStateCompat.ACTION_PAUSE));
+            mediaButtonPendingIntent(PlaybackStateCompat.ACTION_PAUSE));
       case MEDIA_PLAY:
         return new NotificationCompat.Action(
             R.drawable.ic_play_arrow_black_36dp,
             context.getString(R.string.play),
-            MediaButtonReceiver.buildMediaButtonPendingIntent(
-                context, PlaybackStateCompat.ACTION_PLAY));
+            mediaButtonPendingIntent(PlaybackStateCompat.ACTION_PLAY));
       case MEDIA_STOP:
         return new NotificationCompat.Action(
             R.drawable.ic_stop_black_36dp,
             context.getString(R.string.stop),
-            MediaButtonReceiver.buildMediaButtonPendingIntent(
-                context, PlaybackStateCompat.ACTION_STOP));
+            mediaButtonPendingIntent(PlaybackStateCompat.ACTION_STOP));
       case MEDIA_NEXT:
         return new NotificationCompat.Action(
             R.drawable.ic_skip_next_black_36dp,
             context.getString(R.string.skipForward),
-            MediaButtonReceiver.buildMediaButtonPendingIntent(
-                context, PlaybackStateCompat.ACTION_SKIP_TO_NEXT));
+            mediaButtonPendingIntent(PlaybackStateCompat.ACTION_SKIP_TO_NEXT));
       case MEDIA_PREVIOUS:
         return new NotificationCompat.Action(
             R.drawable.ic_skip_previous_black_36dp,
             context.getString(R.string.skipBackward),
-            MediaButtonReceiver.buildMediaButtonPendingIntent(
-                context, PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS));
+            mediaButtonPendingIntent(PlaybackStateCompat.ACTION_SKIP_TO_PREVIOUS));
       case MEDIA_SEEK_FORWARD:
         return new NotificationCompat.Action(
             R.drawable.ic_fast_forward_black_36dp,
             context.getString(R.string.seekForward),
-            MediaButtonReceiver.buildMediaButtonPendingIntent(
-                context, PlaybackStateCompat.ACTION_FAST_FORWARD));
+            mediaButtonPendingIntent(PlaybackStateCompat.ACTION_FAST_FORWARD));
       case MEDIA_SEEK_BACKWARD:
         return new NotificationCompat.Action(
             R.drawable.ic_fast_rewind_black_36dp,
             context.getString(R.string.seekBackward),
-            MediaButtonReceiver.buildMediaButtonPendingIntent(
-                context, PlaybackStateCompat.ACTION_REWIND));
+            mediaButtonPendingIntent(PlaybackStateCompat.ACTION_REWIND));
       default:
         Log.e(TAG, "unsupported mediaButtonType:" + mediaButtonType);
         return null; //ERROR
     }
   }
 
+  /**
+   * Returns the media button intent for a {@link PlaybackStateCompat} action, built once, since
+   * buttons are pushed again on each change of playback state.
+   */
+  private PendingIntent mediaButtonPendingIntent(long action) {
+    PendingIntent pendingIntent = mediaButtonPendingIntents.get(action);
+    if (pendingIntent == null) {
+      pendingIntent = MediaButtonReceiver.buildMediaButtonPendingIntent(context, action);
+      mediaButtonPendingIntents.put(action, pendingIntent);
+    }
+    return pendingIntent;
+  }
+
   /** Converts a custom media button map (from Dart) into a {@link NotificationCompat.Action}. */
   private NotificationCompat.Action customMediaButtonMapToAction(Map customMediaButton) {
     String resourceName = (String) customMediaButton.get(MEDIA_CUSTOM_DRAWABLE_RESOURCE);
@@ -724,13 +2272,22 @@ public class AudiofileplayerPlugin
     String eventId = (String) customMediaButton.get(MEDIA_CUSTOM_EVENT_ID);
     int resourceId =
         context.getResources().getIdentifier(resourceName, "drawable", context.getPackageName());
-    ComponentName component =
-        new ComponentName(context.getPackageName(), AudiofileplayerService.class.getName());
-    Intent intent = new Intent(Intent.ACTION_MEDIA_BUTTON);
-    intent.setComponent(component);
-    intent.putExtra(CUSTOM_MEDIA_BUTTON_EXTRA_KEY, eventId);
-    PendingIntent pendingIntent =
-        PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_CANCEL_CURRENT);
+    PendingIntent pendingIntent = customMediaButtonPendingIntents.get(eventId);
+    if (pendingIntent == null) {
+      ComponentName component =
+          new ComponentName(context.getPackageName(), AudiofileplayerService.class.getName());
+      Intent intent = new Intent(Intent.ACTION_MEDIA_BUTTON);
+      intent.setComponent(component);
+      intent.putExtra(CUSTOM_MEDIA_BUTTON_EXTRA_KEY, eventId);
+      // Extras do not tell PendingIntents apart, so each event id gets its own request code.
+      pendingIntent =
+          PendingIntent.getService(
+              context,
+              customMediaButtonPendingIntents.size(),
+              intent,
+              PendingIntent.FLAG_UPDATE_CURRENT);
+      customMediaButtonPendingIntents.put(eventId, pendingIntent);
+    }
 
     return new NotificationCompat.Action(resourceId, title, pendingIntent);
   }
@@ -13,6 +13,8 @@ import android.graphics.Bitmap;
 import android.media.AudioManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.renderscript.RenderScript;
 import android.support.v4.media.MediaBrowserCompat;
 import android.support.v4.media.MediaMetadataCompat;
@@ -25,7 +27,11 @@ import androidx.core.app.NotificationCompat;
 import androidx.media.MediaBrowserServiceCompat;
 import androidx.media.app.NotificationCompat.MediaStyle;
 import androidx.media.session.MediaButtonReceiver;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class AudiofileplayerService extends MediaBrowserServiceCompat
     implements AudioManager.OnAudioFocusChangeListener {
@@ -33,6 +39,8 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
   private static final String MEDIA_ROOT_ID = "root";
   private static final String CHANNEL_ID = AudiofileplayerService.class.getName();
   private static final int NOTIFICATION_ID = 54321;
+  // Changes within this delay (about one frame) are coalesced into a single notification update.
+  private static final long NOTIFICATION_UPDATE_DELAY_MS = 16;
 
   static AudiofileplayerService instance;
 
@@ -49,6 +57,21 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
   private long playbackStatePosition = 0;
   private float playbackStateSpeed = 0;
 
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final Runnable notificationUpdateRunnable = this::applyNotificationUpdate;
+  private boolean notificationUpdatePending;
+  // Content of the notification last posted, or null if none is showing.
+  private List<Object> postedNotificationContent;
+  // Resolved lazily and reused across notification builds.
+  private int smallIconId;
+  private PendingIntent stopPendingIntent;
+  // The media session's activity, kept here since reading it back goes through its controller.
+  private PendingIntent sessionActivity;
+  private int notificationBuildCount;
+  private int notificationSkipCount;
+  private int notificationCoalesceCount;
+  private int notificationNotifyCount;
+
   public interface ServiceListener {
     void onMediaButtonClick(int keyCode);
 
@@ -114,6 +137,7 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
   public void onDestroy() {
     Log.i(TAG, "onDestroy");
     instance = null;
+    handler.removeCallbacks(notificationUpdateRunnable);
     mediaSession.release();
     super.onDestroy();
   }
@@ -139,6 +163,7 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
     PendingIntent pendingIntent =
         PendingIntent.getActivity(context, 99, intent, PendingIntent.FLAG_UPDATE_CURRENT);
     mediaSession.setSessionActivity(pendingIntent);
+    sessionActivity = pendingIntent;
   }
 
   public void setListener(AudiofileplayerService.ServiceListener listener) {
@@ -157,22 +182,29 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
   public void stop() {
     metadata = null;
     if (notificationActions != null) notificationActions.clear();
-    PlaybackStateCompat.Builder builder =
-        new PlaybackStateCompat.Builder()
-            .setActions(0)
-            .setState(PlaybackStateCompat.STATE_STOPPED, playbackStatePosition, 0.0f);
-    mediaSession.setPlaybackState(builder.build());
+    playbackStateActions = 0;
+    playbackStateState = PlaybackStateCompat.STATE_STOPPED;
+    playbackStateSpeed = 0.0f;
+    updatePlaybackState();
     mediaSession.setActive(false);
-    stopForeground(true);
+    removeNotification();
     stopSelf();
   }
 
   public void setPlaybackStateActions(long actions) {
+    if (actions == playbackStateActions) {
+      return;
+    }
     this.playbackStateActions = actions;
     updatePlaybackState();
   }
 
   public void setPlaybackStateState(int playbackState, long position, float speed) {
+    if (playbackState == playbackStateState
+        && position == playbackStatePosition
+        && speed == playbackStateSpeed) {
+      return;
+    }
     this.playbackStateState = playbackState;
     this.playbackStatePosition = position;
     this.playbackStateSpeed = speed;
@@ -203,9 +235,34 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
     updateNotification();
   }
 
+  /** Counters for notification builds, unchanged-content skips, coalesced updates and notifies. */
+  public Map<String, Object> getNotificationStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("builds", notificationBuildCount);
+    stats.put("skips", notificationSkipCount);
+    stats.put("coalesced", notificationCoalesceCount);
+    stats.put("notifies", notificationNotifyCount);
+    return stats;
+  }
+
   // private methods.
 
   private int getSmallIconId() {
+    if (smallIconId == 0) {
+      smallIconId = resolveSmallIconId();
+    }
+    return smallIconId;
+  }
+
+  private PendingIntent getStopPendingIntent() {
+    if (stopPendingIntent == null) {
+      stopPendingIntent =
+          MediaButtonReceiver.buildMediaButtonPendingIntent(this, PlaybackStateCompat.ACTION_STOP);
+    }
+    return stopPendingIntent;
+  }
+
+  private int resolveSmallIconId() {
     Context context = getApplicationContext();
     String iconUri = "mipmap/ic_launcher";
 
@@ -237,6 +294,16 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
   }
 
   private Notification buildNotification() {
+    boolean traced = Tracing.begin(Tracing.BUILD_NOTIFICATION);
+    try {
+      return createNotification();
+    } finally {
+      Tracing.end(traced);
+    }
+  }
+
+  private Notification createNotification() {
+    notificationBuildCount++;
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) createChannel();
 
     //
@@ -269,11 +336,9 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
         .setLargeIcon(bitmap)
         .setSmallIcon(getSmallIconId())
         // Enable launching the player by clicking the notification
-        .setContentIntent(mediaSession.getController().getSessionActivity())
+        .setContentIntent(sessionActivity)
         // Stop the service when the notification is swiped away
-        .setDeleteIntent(
-            MediaButtonReceiver.buildMediaButtonPendingIntent(
-                this, PlaybackStateCompat.ACTION_STOP))
+        .setDeleteIntent(getStopPendingIntent())
         // Make the transport controls visible on the lockscreen
         .setVisibility(NotificationCompat.VISIBILITY_PUBLIC)
         // Set the media style to show icons for the Actions.
@@ -284,9 +349,7 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
                 .setMediaSession(mediaSession.getSessionToken())
                 .setShowActionsInCompactView(compactNotificationActionIndices)
                 .setShowCancelButton(true)
-                .setCancelButtonIntent(
-                    MediaButtonReceiver.buildMediaButtonPendingIntent(
-                        this, PlaybackStateCompat.ACTION_STOP)));
+                .setCancelButtonIntent(getStopPendingIntent()));
 
     // Add the actions specified by the client.
     if (notificationActions != null) {
@@ -319,6 +382,9 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
       Log.i(TAG, "MediaSessionCallback.onPlay");
       startService(new Intent(AudiofileplayerService.this, AudiofileplayerService.class));
       if (!mediaSession.isActive()) mediaSession.setActive(true);
+      handler.removeCallbacks(notificationUpdateRunnable);
+      notificationUpdatePending = false;
+      postedNotificationContent = notificationContent();
       Notification notif = buildNotification();
       // Display the notification and place the service in the foreground
       startForeground(NOTIFICATION_ID, notif);
@@ -332,7 +398,7 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
     @Override
     public void onStop() {
       Log.i(TAG, "MediaSessionCallback.onStop");
-      stopForeground(true);
+      removeNotification();
       stopSelf();
     }
 
@@ -365,9 +431,59 @@ public class AudiofileplayerService extends MediaBrowserServiceCompat
     }
   }
 
+  /** Schedules a notification update, coalescing it with any other changes in the same frame. */
   private void updateNotification() {
+    if (notificationUpdatePending) {
+      notificationCoalesceCount++;
+      return;
+    }
+    notificationUpdatePending = true;
+    handler.postDelayed(notificationUpdateRunnable, NOTIFICATION_UPDATE_DELAY_MS);
+  }
+
+  /** Posts the notification, unless its content is unchanged since it was last posted. */
+  private void applyNotificationUpdate() {
+    notificationUpdatePending = false;
+    List<Object> content = notificationContent();
+    if (content.equals(postedNotificationContent)) {
+      notificationSkipCount++;
+      return;
+    }
+    postedNotificationContent = content;
     NotificationManager notificationManager =
         (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
     notificationManager.notify(NOTIFICATION_ID, buildNotification());
+    notificationNotifyCount++;
+  }
+
+  private void removeNotification() {
+    handler.removeCallbacks(notificationUpdateRunnable);
+    notificationUpdatePending = false;
+    postedNotificationContent = null;
+    stopForeground(true);
+  }
+
+  /** Everything {@link #buildNotification} renders, in a form which can be compared by equals. */
+  private List<Object> notificationContent() {
+    List<Object> content = new ArrayList<>();
+    if (metadata != null) {
+      content.add(String.valueOf(metadata.getDescription().getTitle()));
+      content.add(String.valueOf(metadata.getDescription().getSubtitle()));
+      content.add(String.valueOf(metadata.getDescription().getDescription()));
+      // Bitmaps compare by identity; the plugin reuses cached artwork bitmaps.
+      content.add(metadata.getDescription().getIconBitmap());
+    }
+    content.add(sessionActivity);
+    if (compactNotificationActionIndices != null) {
+      content.add(Arrays.toString(compactNotificationActionIndices));
+    }
+    if (notificationActions != null) {
+      for (NotificationCompat.Action action : notificationActions) {
+        content.add(action.getIcon());
+        content.add(String.valueOf(action.getTitle()));
+        content.add(action.getActionIntent());
+      }
+    }
+    return content;
   }
 }
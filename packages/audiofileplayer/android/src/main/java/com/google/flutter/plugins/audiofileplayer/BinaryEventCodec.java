@@ -0,0 +1,163 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes high-frequency plugin events into a compact binary layout, for the optional binary event
+ * channel.
+ *
+ * <p>Each message is a sequence of records, little-endian, each starting with a one-byte type.
+ * Audio ids are interned: the first record referring to an id is preceded, in the same message, by
+ * a {@link #HANDLE} record defining its int handle, and later records carry only the handle.
+ * Handles are never reused, so a released id which is loaded again gets a new handle.
+ *
+ * <ul>
+ *   <li>{@link #HANDLE}: i32 handle, u16 length, UTF-8 audio id
+ *   <li>{@link #POSITION}: i32 handle, f64 position seconds
+ *   <li>{@link #POSITIONS}: u16 count, then count times (i32 handle, f64 position seconds)
+ *   <li>{@link #DURATION}: i32 handle, f64 duration seconds
+ *   <li>{@link #COMPLETE}: i32 handle
+ *   <li>{@link #POSITION_ANCHOR}: i32 handle, f64 position seconds, i64 anchor timestamp ms, f64
+ *       playback speed
+ *   <li>{@link #PLAYLIST_TRANSITION}: i32 handle, i32 playlist index
+ *   <li>{@link #MEDIA_EVENT}: u16 length, UTF-8 media event type, f64 seek position seconds (NaN
+ *       if none), u16 length, UTF-8 custom event id (empty if none)
+ *   <li>{@link #READY}: i32 handle
+ *   <li>{@link #EVICTED}: i32 handle
+ * </ul>
+ *
+ * <p>For example, a position report for an already-interned id is 13 bytes, where the standard
+ * method codec needs over 50 bytes plus the length of the id.
+ *
+ * <p>Not thread-safe; must be used from the thread events are sent on.
+ */
+final class BinaryEventCodec {
+  static final byte HANDLE = 0;
+  static final byte POSITION = 1;
+  static final byte POSITIONS = 2;
+  static final byte DURATION = 3;
+  static final byte COMPLETE = 4;
+  static final byte POSITION_ANCHOR = 5;
+  static final byte PLAYLIST_TRANSITION = 6;
+  static final byte MEDIA_EVENT = 7;
+  static final byte READY = 8;
+  static final byte EVICTED = 9;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final Map<String, Integer> handles = new HashMap<>();
+  private int nextHandle;
+  // Handles interned since the last message was begun, to be defined at its start.
+  private final List<Integer> pendingHandles = new ArrayList<>();
+  private final List<byte[]> pendingNames = new ArrayList<>();
+
+  ByteBuffer encodePosition(String audioId, double positionSeconds) {
+    int handle = intern(audioId);
+    return begin(1 + 4 + 8).put(POSITION).putInt(handle).putDouble(positionSeconds);
+  }
+
+  ByteBuffer encodePositions(List<String> audioIds, double[] positionsSeconds) {
+    int[] handles = new int[audioIds.size()];
+    for (int i = 0; i < handles.length; i++) {
+      handles[i] = intern(audioIds.get(i));
+    }
+    ByteBuffer buffer = begin(1 + 2 + handles.length * (4 + 8));
+    buffer.put(POSITIONS).putShort((short) handles.length);
+    for (int i = 0; i < handles.length; i++) {
+      buffer.putInt(handles[i]).putDouble(positionsSeconds[i]);
+    }
+    return buffer;
+  }
+
+  ByteBuffer encodeDuration(String audioId, double durationSeconds) {
+    int handle = intern(audioId);
+    return begin(1 + 4 + 8).put(DURATION).putInt(handle).putDouble(durationSeconds);
+  }
+
+  ByteBuffer encodeComplete(String audioId) {
+    int handle = intern(audioId);
+    return begin(1 + 4).put(COMPLETE).putInt(handle);
+  }
+
+  ByteBuffer encodePositionAnchor(
+      String audioId, double positionSeconds, long anchorTimestampMs, double playbackSpeed) {
+    int handle = intern(audioId);
+    return begin(1 + 4 + 8 + 8 + 8)
+        .put(POSITION_ANCHOR)
+        .putInt(handle)
+        .putDouble(positionSeconds)
+        .putLong(anchorTimestampMs)
+        .putDouble(playbackSpeed);
+  }
+
+  ByteBuffer encodePlaylistTransition(String audioId, int playlistIndex) {
+    int handle = intern(audioId);
+    return begin(1 + 4 + 4).put(PLAYLIST_TRANSITION).putInt(handle).putInt(playlistIndex);
+  }
+
+  ByteBuffer encodeReady(String audioId) {
+    int handle = intern(audioId);
+    return begin(1 + 4).put(READY).putInt(handle);
+  }
+
+  ByteBuffer encodeEvicted(String audioId) {
+    int handle = intern(audioId);
+    return begin(1 + 4).put(EVICTED).putInt(handle);
+  }
+
+  ByteBuffer encodeMediaEvent(String mediaEventType, double seekPositionSeconds, String customId) {
+    byte[] type = mediaEventType.getBytes(UTF_8);
+    byte[] custom = customId == null ? new byte[0] : customId.getBytes(UTF_8);
+    return begin(1 + 2 + type.length + 8 + 2 + custom.length)
+        .put(MEDIA_EVENT)
+        .putShort((short) type.length)
+        .put(type)
+        .putDouble(seekPositionSeconds)
+        .putShort((short) custom.length)
+        .put(custom);
+  }
+
+  /** Forgets the handle of a released audio id. */
+  void release(String audioId) {
+    handles.remove(audioId);
+  }
+
+  private int intern(String audioId) {
+    Integer handle = handles.get(audioId);
+    if (handle == null) {
+      handle = nextHandle++;
+      handles.put(audioId, handle);
+      pendingHandles.add(handle);
+      pendingNames.add(audioId.getBytes(UTF_8));
+    }
+    return handle;
+  }
+
+  /**
+   * Allocates a message with room for {@code recordSize} bytes after the pending handle
+   * definitions, and writes those definitions.
+   *
+   * <p>Messages are direct buffers, as the platform channel requires, and are returned positioned
+   * at their end, since the channel sends the bytes before the position.
+   */
+  private ByteBuffer begin(int recordSize) {
+    int size = recordSize;
+    for (byte[] name : pendingNames) {
+      size += 1 + 4 + 2 + name.length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < pendingHandles.size(); i++) {
+      byte[] name = pendingNames.get(i);
+      buffer.put(HANDLE).putInt(pendingHandles.get(i)).putShort((short) name.length).put(name);
+    }
+    pendingHandles.clear();
+    pendingNames.clear();
+    return buffer;
+  }
+}
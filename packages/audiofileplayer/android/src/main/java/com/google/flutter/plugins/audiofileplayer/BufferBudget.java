@@ -0,0 +1,157 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * One buffer allocator and byte budget shared by every player, so that total buffer memory is
+ * bounded however many players are loaded.
+ *
+ * <p>Each player gets its own {@link PlayerLoadControl}, which buffers between a minimum and
+ * maximum duration (smaller for the low-memory profile) as long as the shared allocator is under
+ * budget. Players which are playing, or about to play, have priority: others stop loading at {@link
+ * #NON_PRIORITY_SHARE} of the budget, leaving the rest for playing players, which may also exceed
+ * the budget to reach their minimum buffer.
+ *
+ * <p>Load controls are called on ExoPlayer's internal playback threads; {@link DefaultAllocator} is
+ * thread-safe, and the budget and per-player flags are volatile.
+ */
+class BufferBudget {
+  static final int DEFAULT_BUDGET_BYTES = 16 * 1024 * 1024;
+  // Fraction of the budget which players without priority may fill.
+  static final float NON_PRIORITY_SHARE = 0.75f;
+
+  private static final long MIN_BUFFER_MS = 15000;
+  private static final long MAX_BUFFER_MS = 50000;
+  private static final long BUFFER_FOR_PLAYBACK_MS = 2500;
+  private static final long BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS = 5000;
+  private static final long LOW_MEMORY_MIN_BUFFER_MS = 2000;
+  private static final long LOW_MEMORY_MAX_BUFFER_MS = 5000;
+  private static final long LOW_MEMORY_BUFFER_FOR_PLAYBACK_MS = 1000;
+  private static final long LOW_MEMORY_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS = 2000;
+
+  // Not trimmed on reset, since a reset by one player must not affect the others.
+  private final DefaultAllocator allocator =
+      new DefaultAllocator(/* trimOnReset= */ false, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+  private volatile int budgetBytes;
+
+  BufferBudget(int budgetBytes) {
+    setBudgetBytes(budgetBytes);
+  }
+
+  /** Sets the budget shared by all players; memory above it is released as buffers are freed. */
+  void setBudgetBytes(int budgetBytes) {
+    this.budgetBytes = budgetBytes;
+    allocator.setTargetBufferSize(budgetBytes);
+  }
+
+  int getBudgetBytes() {
+    return budgetBytes;
+  }
+
+  int getAllocatedBytes() {
+    return allocator.getTotalBytesAllocated();
+  }
+
+  PlayerLoadControl newLoadControl() {
+    return new PlayerLoadControl();
+  }
+
+  /** Load control of a single player, drawing on the shared budget. */
+  final class PlayerLoadControl implements LoadControl {
+    // Whether the player is playing or about to play.
+    private volatile boolean priority;
+    private volatile boolean lowMemory;
+    // Whether loading continues until the maximum buffer is reached; see shouldContinueLoading.
+    private boolean isBuffering;
+
+    void setPriority(boolean priority) {
+      this.priority = priority;
+    }
+
+    void setLowMemory(boolean lowMemory) {
+      this.lowMemory = lowMemory;
+    }
+
+    @Override
+    public void onPrepared() {
+      isBuffering = false;
+    }
+
+    @Override
+    public void onTracksSelected(
+        Renderer[] renderers, TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {}
+
+    @Override
+    public void onStopped() {
+      isBuffering = false;
+      allocator.trim();
+    }
+
+    @Override
+    public void onReleased() {
+      isBuffering = false;
+      allocator.trim();
+    }
+
+    @Override
+    public Allocator getAllocator() {
+      return allocator;
+    }
+
+    @Override
+    public long getBackBufferDurationUs() {
+      return 0;
+    }
+
+    @Override
+    public boolean retainBackBufferFromKeyframe() {
+      return false;
+    }
+
+    @Override
+    public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
+      long minBufferUs = C.msToUs(lowMemory ? LOW_MEMORY_MIN_BUFFER_MS : MIN_BUFFER_MS);
+      long maxBufferUs = C.msToUs(lowMemory ? LOW_MEMORY_MAX_BUFFER_MS : MAX_BUFFER_MS);
+      int allocatedBytes = allocator.getTotalBytesAllocated();
+      boolean underBudget =
+          priority
+              ? allocatedBytes < budgetBytes || bufferedDurationUs < minBufferUs
+              : allocatedBytes < budgetBytes * NON_PRIORITY_SHARE;
+      if (!underBudget) {
+        isBuffering = false;
+      } else if (bufferedDurationUs < minBufferUs) {
+        isBuffering = true;
+      } else if (bufferedDurationUs >= maxBufferUs) {
+        isBuffering = false;
+      }
+      return isBuffering;
+    }
+
+    @Override
+    public boolean shouldStartPlayback(
+        long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
+      bufferedDurationUs =
+          Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
+      long minBufferMs;
+      if (lowMemory) {
+        minBufferMs =
+            rebuffering
+                ? LOW_MEMORY_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS
+                : LOW_MEMORY_BUFFER_FOR_PLAYBACK_MS;
+      } else {
+        minBufferMs =
+            rebuffering ? BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS : BUFFER_FOR_PLAYBACK_MS;
+      }
+      // Start anyway once the budget is exhausted, since no more can be buffered.
+      return bufferedDurationUs >= C.msToUs(minBufferMs)
+          || allocator.getTotalBytesAllocated() >= budgetBytes;
+    }
+  }
+}
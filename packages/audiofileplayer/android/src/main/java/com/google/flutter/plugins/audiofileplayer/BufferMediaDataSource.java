@@ -1,32 +1,81 @@
 package com.google.flutter.plugins.audiofileplayer;
 
-import android.media.MediaDataSource;
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
+import com.google.android.exoplayer2.upstream.DataSourceException;
+import com.google.android.exoplayer2.upstream.DataSpec;
 import java.io.IOException;
 
-/** A MediaDataSource implementation to read a byte array of media data. */
-final class BufferMediaDataSource extends MediaDataSource {
+/**
+ * An ExoPlayer DataSource implementation to read a byte array of media data.
+ *
+ * <p>Reads straight from the array it is given, without copying it or writing it to disk. Each
+ * {@link #open(DataSpec)} may start at any position within the array, so extractors can seek
+ * freely.
+ */
+final class BufferMediaDataSource extends BaseDataSource {
   private final byte[] bytes;
+  @Nullable private Uri uri;
+  private int readPosition;
+  private int bytesRemaining;
+  private boolean opened;
 
   public BufferMediaDataSource(byte[] bytes) {
+    super(/* isNetwork= */ false);
     this.bytes = bytes;
   }
 
   @Override
-  public long getSize() {
-    return bytes.length;
+  public long open(DataSpec dataSpec) throws IOException {
+    uri = dataSpec.uri;
+    transferInitializing(dataSpec);
+    if (dataSpec.position > bytes.length) {
+      throw new DataSourceException(DataSourceException.POSITION_OUT_OF_RANGE);
+    }
+    readPosition = (int) dataSpec.position;
+    bytesRemaining = bytes.length - readPosition;
+    if (dataSpec.length != C.LENGTH_UNSET) {
+      if (dataSpec.length > bytesRemaining) {
+        throw new DataSourceException(DataSourceException.POSITION_OUT_OF_RANGE);
+      }
+      bytesRemaining = (int) dataSpec.length;
+    }
+    opened = true;
+    transferStarted(dataSpec);
+    return bytesRemaining;
   }
 
   @Override
-  public int readAt(long position, byte[] buffer, int offset, int size) {
-    if (position >= bytes.length) {
-      // Indicate end of stream with -1.
-      return -1;
+  public int read(byte[] buffer, int offset, int readLength) {
+    if (readLength == 0) {
+      return 0;
     }
-    int readSize = Math.min(size, Math.min(buffer.length - offset, bytes.length - (int) position));
-    System.arraycopy(bytes, (int) position, buffer, offset, readSize);
+    if (bytesRemaining == 0) {
+      // Indicate end of stream.
+      return C.RESULT_END_OF_INPUT;
+    }
+    int readSize = Math.min(readLength, bytesRemaining);
+    System.arraycopy(bytes, readPosition, buffer, offset, readSize);
+    readPosition += readSize;
+    bytesRemaining -= readSize;
+    bytesTransferred(readSize);
     return readSize;
   }
 
   @Override
-  public void close() throws IOException {}
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public void close() {
+    if (opened) {
+      opened = false;
+      transferEnded();
+    }
+    uri = null;
+  }
 }
@@ -0,0 +1,44 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.os.Handler;
+import android.os.Looper;
+import io.flutter.plugin.common.MethodChannel.Result;
+
+/**
+ * A {@link Result} which delivers to its delegate on the thread of a {@link Handler}.
+ *
+ * <p>Used to reply from the playback thread to calls made on the platform thread, and vice versa
+ * for batched commands; see {@link AudiofileplayerPlugin#onMethodCall}.
+ */
+class HandlerResult implements Result {
+  private final Result delegate;
+  private final Handler handler;
+
+  HandlerResult(Result delegate, Handler handler) {
+    this.delegate = delegate;
+    this.handler = handler;
+  }
+
+  @Override
+  public void success(Object result) {
+    run(() -> delegate.success(result));
+  }
+
+  @Override
+  public void error(String errorCode, String errorMessage, Object errorDetails) {
+    run(() -> delegate.error(errorCode, errorMessage, errorDetails));
+  }
+
+  @Override
+  public void notImplemented() {
+    run(delegate::notImplemented);
+  }
+
+  private void run(Runnable runnable) {
+    if (Looper.myLooper() == handler.getLooper()) {
+      runnable.run();
+    } else {
+      handler.post(runnable);
+    }
+  }
+}
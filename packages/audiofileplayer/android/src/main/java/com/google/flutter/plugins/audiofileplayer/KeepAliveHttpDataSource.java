@@ -0,0 +1,262 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource.HttpDataSourceException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An ExoPlayer DataSource implementation which fetches remote audio over HTTP, reusing connections.
+ *
+ * <p>Every open issues a byte-range request starting at the requested position, so seeks fetch only
+ * the data they need. Unlike ExoPlayer's DefaultHttpDataSource, closing a fully read response, or
+ * one with at most {@link #MAX_DRAIN_BYTES} left, drains and closes the body rather than calling
+ * {@link HttpURLConnection#disconnect()}, which returns the socket to the platform's per-host
+ * keep-alive pool for the next open of the same host.
+ *
+ * <p>Closing with more of the body left, or an unknown amount (e.g. on a seek far into the stream),
+ * disconnects deliberately: an HTTP/1.1 response cannot be abandoned part way, so the socket could
+ * only be reused after reading the rest of the body, which costs more than a new connection.
+ */
+final class KeepAliveHttpDataSource extends BaseDataSource {
+  static final int CONNECT_TIMEOUT_MS = 8000;
+  static final int READ_TIMEOUT_MS = 8000;
+  // Upper bound on unread response bytes to consume on close, to keep the connection reusable.
+  private static final long MAX_DRAIN_BYTES = 64 * 1024;
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+  /** Factory for {@link KeepAliveHttpDataSource}s. */
+  static final class Factory implements DataSource.Factory {
+    private final String userAgent;
+
+    Factory(String userAgent) {
+      this.userAgent = userAgent;
+    }
+
+    @Override
+    public DataSource createDataSource() {
+      return new KeepAliveHttpDataSource(userAgent);
+    }
+  }
+
+  private final String userAgent;
+  @Nullable private HttpURLConnection connection;
+  @Nullable private InputStream inputStream;
+  @Nullable private DataSpec dataSpec;
+  // Bytes left to read from the current response, or C.LENGTH_UNSET if unknown.
+  private long bytesRemaining;
+  private boolean opened;
+
+  KeepAliveHttpDataSource(String userAgent) {
+    super(/* isNetwork= */ true);
+    this.userAgent = userAgent;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws HttpDataSourceException {
+    this.dataSpec = dataSpec;
+    transferInitializing(dataSpec);
+    try {
+      connection = openConnection(dataSpec);
+      int responseCode = connection.getResponseCode();
+      if (responseCode == HTTP_RANGE_NOT_SATISFIABLE
+          && dataSpec.position == parseContentRangeLength(connection)) {
+        // Opened at the end of the resource, e.g. after caching all but its end; nothing to read.
+        drainErrorStream();
+        bytesRemaining = 0;
+      } else if (responseCode < 200 || responseCode > 299) {
+        closeConnectionQuietly();
+        throw new HttpDataSourceException(
+            "Response code: " + responseCode, dataSpec, HttpDataSourceException.TYPE_OPEN);
+      } else {
+        inputStream = connection.getInputStream();
+        long contentLength = parseContentLength(connection);
+        // A server which ignores the Range header returns the whole resource.
+        long bytesToSkip =
+            responseCode == HttpURLConnection.HTTP_OK && dataSpec.position != 0
+                ? dataSpec.position
+                : 0;
+        skipFully(bytesToSkip);
+        if (dataSpec.length != C.LENGTH_UNSET) {
+          bytesRemaining = dataSpec.length;
+        } else if (contentLength != C.LENGTH_UNSET) {
+          bytesRemaining = contentLength - bytesToSkip;
+        } else {
+          bytesRemaining = C.LENGTH_UNSET;
+        }
+      }
+    } catch (IOException e) {
+      closeConnectionQuietly();
+      if (e instanceof HttpDataSourceException) {
+        throw (HttpDataSourceException) e;
+      }
+      throw new HttpDataSourceException(
+          "Unable to connect to " + dataSpec.uri, e, dataSpec, HttpDataSourceException.TYPE_OPEN);
+    }
+    opened = true;
+    transferStarted(dataSpec);
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws HttpDataSourceException {
+    if (readLength == 0) {
+      return 0;
+    }
+    if (bytesRemaining == 0) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    int bytesToRead =
+        bytesRemaining == C.LENGTH_UNSET ? readLength : (int) Math.min(readLength, bytesRemaining);
+    int bytesRead;
+    try {
+      bytesRead = inputStream.read(buffer, offset, bytesToRead);
+    } catch (IOException e) {
+      throw new HttpDataSourceException(e, dataSpec, HttpDataSourceException.TYPE_READ);
+    }
+    if (bytesRead == -1) {
+      if (bytesRemaining != C.LENGTH_UNSET) {
+        // End of input reached before the expected length.
+        throw new HttpDataSourceException(
+            new EOFException(), dataSpec, HttpDataSourceException.TYPE_READ);
+      }
+      return C.RESULT_END_OF_INPUT;
+    }
+    if (bytesRemaining != C.LENGTH_UNSET) {
+      bytesRemaining -= bytesRead;
+    }
+    bytesTransferred(bytesRead);
+    return bytesRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return connection == null ? null : Uri.parse(connection.getURL().toString());
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return connection == null ? Collections.emptyMap() : connection.getHeaderFields();
+  }
+
+  @Override
+  public void close() throws HttpDataSourceException {
+    try {
+      if (inputStream != null) {
+        if (bytesRemaining != C.LENGTH_UNSET && bytesRemaining <= MAX_DRAIN_BYTES) {
+          skipFully(bytesRemaining);
+          inputStream.close();
+        } else {
+          // Too much left to drain; see the class comment.
+          closeConnectionQuietly();
+        }
+      }
+    } catch (IOException e) {
+      closeConnectionQuietly();
+      throw new HttpDataSourceException(e, dataSpec, HttpDataSourceException.TYPE_CLOSE);
+    } finally {
+      inputStream = null;
+      connection = null;
+      if (opened) {
+        opened = false;
+        transferEnded();
+      }
+    }
+  }
+
+  private HttpURLConnection openConnection(DataSpec dataSpec) throws IOException {
+    HttpURLConnection connection =
+        (HttpURLConnection) new URL(dataSpec.uri.toString()).openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+    connection.setReadTimeout(READ_TIMEOUT_MS);
+    connection.setInstanceFollowRedirects(true);
+    connection.setRequestProperty("User-Agent", userAgent);
+    connection.setRequestProperty("Connection", "keep-alive");
+    // Byte offsets are only meaningful for an unencoded body.
+    connection.setRequestProperty("Accept-Encoding", "identity");
+    if (dataSpec.position != 0 || dataSpec.length != C.LENGTH_UNSET) {
+      String range = "bytes=" + dataSpec.position + "-";
+      if (dataSpec.length != C.LENGTH_UNSET) {
+        range += dataSpec.position + dataSpec.length - 1;
+      }
+      connection.setRequestProperty("Range", range);
+    }
+    return connection;
+  }
+
+  private void skipFully(long byteCount) throws IOException {
+    while (byteCount > 0) {
+      long skipped = inputStream.skip(byteCount);
+      if (skipped <= 0) {
+        // skip() may return 0 before the end of the stream; fall back to read().
+        if (inputStream.read() == -1) {
+          throw new EOFException();
+        }
+        skipped = 1;
+      }
+      byteCount -= skipped;
+    }
+  }
+
+  /** Reads and closes the body of an error response, so that its connection can be reused. */
+  private void drainErrorStream() throws IOException {
+    InputStream errorStream = connection.getErrorStream();
+    if (errorStream == null) {
+      return;
+    }
+    byte[] buffer = new byte[4096];
+    long drainedBytes = 0;
+    int bytesRead;
+    while (drainedBytes <= MAX_DRAIN_BYTES && (bytesRead = errorStream.read(buffer)) != -1) {
+      drainedBytes += bytesRead;
+    }
+    errorStream.close();
+  }
+
+  /**
+   * Returns the complete length from a Content-Range header ("bytes 0-99/100" or "bytes {@code
+   * *}/100"), or {@link C#LENGTH_UNSET} if it is absent or unknown.
+   */
+  private static long parseContentRangeLength(HttpURLConnection connection) {
+    String contentRange = connection.getHeaderField("Content-Range");
+    if (contentRange == null) {
+      return C.LENGTH_UNSET;
+    }
+    try {
+      return Long.parseLong(contentRange.substring(contentRange.indexOf('/') + 1).trim());
+    } catch (NumberFormatException e) {
+      return C.LENGTH_UNSET;
+    }
+  }
+
+  private static long parseContentLength(HttpURLConnection connection) {
+    String contentLength = connection.getHeaderField("Content-Length");
+    if (contentLength == null) {
+      return C.LENGTH_UNSET;
+    }
+    try {
+      return Long.parseLong(contentLength.trim());
+    } catch (NumberFormatException e) {
+      return C.LENGTH_UNSET;
+    }
+  }
+
+  private void closeConnectionQuietly() {
+    if (connection != null) {
+      connection.disconnect();
+      connection = null;
+    }
+  }
+}
@@ -1,112 +1,77 @@
 package com.google.flutter.plugins.audiofileplayer;
 
 import android.content.Context;
-import android.content.res.AssetFileDescriptor;
-import android.media.MediaPlayer;
-import android.os.Build;
+import android.net.Uri;
 
 import com.google.android.exoplayer2.source.MediaSource;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.UUID;
 
 /**
  * Wraps a MediaPlayer for local asset use by AudiofileplayerPlugin.
  *
- * <p>Used for local audio data only; loading occurs synchronously. Loading remote audio should use
+ * <p>Used for local audio data only; the player is prepared according to its {@link
+ * ManagedMediaPlayer.LoadStrategy}, by default on first play. Loading remote audio should use
  * RemoteManagedMediaPlayer.
  */
 class LocalManagedMediaPlayer extends ManagedMediaPlayer {
+  // Scheme of the placeholder Uri identifying in-memory audio to the media source.
+  private static final String BYTES_URI_SCHEME = "bytes";
 
   /**
-   * Private shared constructor.
+   * Create a LocalManagedMediaPlayer playing {@code mediaSource}.
    *
-   * <p>Callers must subsequently set a data source and call {@link MediaPlayer#prepare()}.
+   * <p>The plugin builds media sources off the main thread, so that only the player itself is set
+   * up here, when {@code loadStrategy} asks for it.
    */
-  private LocalManagedMediaPlayer(
+  LocalManagedMediaPlayer(
       String audioId,
       AudiofileplayerPlugin parentAudioPlugin,
       boolean looping,
       boolean playInBackground,
-      Context context, MediaSource mediaSource)
-      throws IllegalArgumentException, IOException {
-    super(audioId, parentAudioPlugin, looping, playInBackground, context, mediaSource);
-//    player.setOnErrorListener(this);
-//    player.setOnCompletionListener(this);
-//    player.setOnSeekCompleteListener(this);
+      Context context,
+      MediaSource mediaSource,
+      LoadStrategy loadStrategy) {
+    super(
+        audioId, parentAudioPlugin, looping, playInBackground, context, mediaSource, loadStrategy);
   }
 
-  /**
-   * Create a LocalManagedMediaPlayer from an AssetFileDescriptor.
-   *
-   * @throws IOException if underlying MediaPlayer cannot load AssetFileDescriptor.
-   */
+  /** Create a LocalManagedMediaPlayer taking over a player prepared by the {@link Preloader}. */
   public LocalManagedMediaPlayer(
       String audioId,
-      AssetFileDescriptor afd,
+      Preloader.PreloadedPlayer preloadedPlayer,
       AudiofileplayerPlugin parentAudioPlugin,
       boolean looping,
       boolean playInBackground,
-      Context context, MediaSource mediaSource)
-      throws IOException {
-    this(audioId, parentAudioPlugin, looping, playInBackground, context, mediaSource);
-    //player.prepare(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
-    //player.prepare();
+      Context context,
+      LoadStrategy loadStrategy) {
+    super(
+        audioId,
+        parentAudioPlugin,
+        looping,
+        playInBackground,
+        context,
+        preloadedPlayer.mediaSource,
+        preloadedPlayer.player,
+        loadStrategy);
   }
 
   /**
-   * Create a LocalManagedMediaPlayer from a path string.
-   *
-   * @throws IOException if underlying MediaPlayer cannot load the path.
+   * Builds a media source reading an audio file through a memory mapping; see {@link
+   * MappedFileDataSource}.
    */
-//  public LocalManagedMediaPlayer(
-//      String audioId,
-//      String path,
-//      AudiofileplayerPlugin parentAudioPlugin,
-//      boolean looping,
-//      boolean playInBackground)
-//      throws IOException {
-//    this(audioId, parentAudioPlugin, looping, playInBackground);
-//    player.setDataSource(path);
-//    player.prepare();
-//  }
+  static MediaSource buildFileMediaSource(String path) {
+    return buildMediaSource(Uri.fromFile(new File(path)), MappedFileDataSource.factory(path));
+  }
 
   /**
-   * Create a ManagedMediaPlayer from a byte array.
-   *
-   * <p>Uses {@link android.media.MediaPlayer#setDataSource(android.media.MediaDataSource)} if
-   * available. Otherwise falls back to writing the byte[] to disk and reading it back.
-   *
-   * @throws IllegalArgumentException if BufferMediaDataSource is invalid.
-   * @throws IOException if underlying MediaPlayer cannot load BufferMediaDataSource or
-   *     FileDescriptor.
+   * Builds a media source reading audio directly from {@code audioBytes} through a {@link
+   * BufferMediaDataSource}; the array is neither copied nor written to disk, so callers must not
+   * modify it afterwards.
    */
-//  public LocalManagedMediaPlayer(
-//      String audioId,
-//      byte[] audioBytes,
-//      AudiofileplayerPlugin parentAudioPlugin,
-//      boolean looping,
-//      boolean playInBackground,
-//      Context context)
-//      throws IOException, IllegalArgumentException, IllegalStateException {
-//    this(audioId, parentAudioPlugin, looping, playInBackground);
-////    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-////      player.setDataSource(new BufferMediaDataSource(audioBytes));
-////    } else {
-////      // On older SDK versions, write the byte[] to disk, then read as FileDescriptor.
-////      File tempAudioFile =
-////          File.createTempFile(UUID.randomUUID().toString(), null, context.getCacheDir());
-////      tempAudioFile.deleteOnExit();
-////      FileOutputStream fos = new FileOutputStream(tempAudioFile);
-////      fos.write(audioBytes);
-////      fos.close();
-////      FileInputStream fis = new FileInputStream(tempAudioFile);
-////      player.setDataSource(fis.getFD());
-////      fis.close();
-////    }
-////    player.prepare();
-//  }
+  static MediaSource buildBytesMediaSource(String name, byte[] audioBytes) {
+    return buildMediaSource(
+        new Uri.Builder().scheme(BYTES_URI_SCHEME).opaquePart(name).build(),
+        () -> new BufferMediaDataSource(audioBytes));
+  }
 }
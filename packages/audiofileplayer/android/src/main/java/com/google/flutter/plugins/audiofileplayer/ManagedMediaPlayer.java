@@ -2,14 +2,24 @@ package com.google.flutter.plugins.audiofileplayer;
 
 import android.content.Context;
 import android.media.MediaPlayer;
+import android.net.Uri;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
+import androidx.annotation.Nullable;
 
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.PlaybackParameters;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
+import com.google.android.exoplayer2.source.ExtractorMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.upstream.DataSource;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 
 /** Base class for wrapping a MediaPlayer for use by AudiofileplayerPlugin. */
 abstract class ManagedMediaPlayer
@@ -24,50 +34,171 @@ abstract class ManagedMediaPlayer
     void onSeekComplete();
   }
 
+  /** When a player's underlying {@link SimpleExoPlayer} is acquired and prepared. */
+  enum LoadStrategy {
+    /** Acquire the player at load, and prepare it on first play. */
+    DEFAULT,
+    /** Acquire and prepare the player on first play, without reading the source at load. */
+    LAZY,
+    /**
+     * As {@link #LAZY}, but the duration is read from the container header at load (see {@link
+     * MediaInfoProbe}).
+     */
+    METADATA_ONLY,
+    /** Acquire and prepare the player at load, and report to the plugin once it is ready. */
+    PREPARED
+  }
+
   protected final AudiofileplayerPlugin parentAudioPlugin;
   protected final String audioId;
   protected final boolean playInBackground;
   protected final Context context;
-  protected final SimpleExoPlayer player;
+  // Null until acquired, for the lazy load strategies.
+  @Nullable protected SimpleExoPlayer player;
   protected final MediaSource mediaSource;
   final Handler handler;
   final Runnable pauseAtEndpointRunnable;
-  private OnSeekCompleteListener onSeekCompleteListener;
+  // Listeners of seeks not yet processed by the player, completed in order.
+  private final List<OnSeekCompleteListener> pendingSeekListeners = new ArrayList<>();
+  private final boolean looping;
+  private float volume = 1.0f;
+  // Position applied when the player is next prepared.
+  private int pendingWindowIndex;
+  private long pendingPositionMs;
+  private boolean reportReady;
+  private boolean reportDurationWhenReady;
+  // Listeners added to each player acquired.
+  private final List<Player.EventListener> playerListeners = new ArrayList<>();
+  // Load control of the current player, drawing on the plugin's shared BufferBudget.
+  @Nullable private BufferBudget.PlayerLoadControl loadControl;
+  private boolean lowMemoryBuffering;
+  // Uptimes at which the pending prepare, play and rebuffer began, for PluginStats; -1 if none.
+  private long prepareStartTimeMs = -1;
+  private long playStartTimeMs = -1;
+  private long rebufferStartTimeMs = -1;
+  // Whether the player has been ready since its last prepare or seek, so that buffering is a
+  // rebuffer rather than initial or post-seek buffering.
+  private boolean readySincePrepareOrSeek;
+  // Uptime of the last play, pause or seek, to evict the least recently used players first.
+  private long lastUseTimeMs = SystemClock.uptimeMillis();
 
+  // Interval between position reports while playing; 0 to use the plugin-wide interval.
+  private long positionUpdateIntervalMs;
+
+  /**
+   * Registers with the plugin's {@link PositionTicker} only while actually playing, and reports a
+   * position anchor on every change to how the position advances: play, pause, rebuffering,
+   * completion, seek, loop/discontinuity and playback speed changes.
+   */
+  private final Player.EventListener playerEventListener =
+      new Player.EventListener() {
+        @Override
+        public void onIsPlayingChanged(boolean isPlaying) {
+          if (isPlaying && playStartTimeMs >= 0) {
+            parentAudioPlugin
+                .getPluginStats()
+                .recordPlayToFirstAudio(SystemClock.uptimeMillis() - playStartTimeMs);
+            playStartTimeMs = -1;
+          }
+          if (isPlaying && !parentAudioPlugin.isAnchorPositionReporting()) {
+            parentAudioPlugin.getPositionTicker().start(ManagedMediaPlayer.this);
+          } else {
+            parentAudioPlugin.getPositionTicker().stop(ManagedMediaPlayer.this);
+          }
+          parentAudioPlugin.handlePositionAnchor(ManagedMediaPlayer.this);
+        }
 
-  /** Runnable which repeatedly sends the player's position. */
-  private final Runnable updatePositionData =
-      new Runnable() {
         @Override
-        public void run() {
-          try {
-            if (player.isPlaying()) {
-              double positionSeconds = (double) player.getCurrentPosition() / 1000.0;
-              parentAudioPlugin.handlePosition(audioId, positionSeconds);
-            }
-            handler.postDelayed(this, 250);
-          } catch (Exception e) {
-            Log.e(TAG, "Could not schedule position update for player", e);
+        public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+          // Players which are playing, or about to, have priority for buffer memory.
+          if (loadControl != null) {
+            loadControl.setPriority(playWhenReady);
+          }
+          recordStateStats(playWhenReady, playbackState);
+          if (playbackState != Player.STATE_READY) {
+            return;
+          }
+          if (reportDurationWhenReady) {
+            reportDurationWhenReady = false;
+            parentAudioPlugin.handleDurationForPlayer(ManagedMediaPlayer.this, audioId, null);
+          }
+          if (reportReady) {
+            reportReady = false;
+            parentAudioPlugin.handleReady(audioId);
           }
         }
+
+        @Override
+        public void onSeekProcessed() {
+          parentAudioPlugin.handlePositionAnchor(ManagedMediaPlayer.this);
+          // Called once all seeks requested so far have been processed, not once per seek.
+          completePendingSeeks();
+        }
+
+        @Override
+        public void onPositionDiscontinuity(int reason) {
+          // Seeks are reported once processed, in onSeekProcessed().
+          if (reason != Player.DISCONTINUITY_REASON_SEEK) {
+            parentAudioPlugin.handlePositionAnchor(ManagedMediaPlayer.this);
+          }
+        }
+
+        @Override
+        public void onPlaybackParametersChanged(PlaybackParameters playbackParameters) {
+          parentAudioPlugin.handlePositionAnchor(ManagedMediaPlayer.this);
+        }
       };
 
   protected ManagedMediaPlayer(
       String audioId,
       AudiofileplayerPlugin parentAudioPlugin,
       boolean looping,
-      boolean playInBackground, Context context,
-      MediaSource mediaSource) {
+      boolean playInBackground,
+      Context context,
+      MediaSource mediaSource,
+      LoadStrategy loadStrategy) {
+    this(
+        audioId,
+        parentAudioPlugin,
+        looping,
+        playInBackground,
+        context,
+        mediaSource,
+        null,
+        loadStrategy);
+  }
+
+  /**
+   * @param preparedPlayer a player already prepared with {@code mediaSource} (see {@link
+   *     Preloader}), or null to acquire an unprepared player from the {@link PlayerPool} according
+   *     to {@code loadStrategy}. A prepared player is used whatever the strategy, and still reports
+   *     readiness for {@link LoadStrategy#PREPARED}.
+   */
+  protected ManagedMediaPlayer(
+      String audioId,
+      AudiofileplayerPlugin parentAudioPlugin,
+      boolean looping,
+      boolean playInBackground,
+      Context context,
+      MediaSource mediaSource,
+      @Nullable SimpleExoPlayer preparedPlayer,
+      LoadStrategy loadStrategy) {
     this.parentAudioPlugin = parentAudioPlugin;
     this.audioId = audioId;
     this.playInBackground = playInBackground;
     this.context = context;
     this.mediaSource = mediaSource;
-    player =  new SimpleExoPlayer.Builder(context).build();
-      if (looping)
-        player.setRepeatMode(Player.REPEAT_MODE_ALL);
-      else
-        player.setRepeatMode(Player.REPEAT_MODE_OFF);
+    this.looping = looping;
+    playerListeners.add(playerEventListener);
+    if (preparedPlayer != null) {
+      attachPlayer(preparedPlayer);
+      reportReady = loadStrategy == LoadStrategy.PREPARED;
+    } else if (loadStrategy == LoadStrategy.DEFAULT) {
+      attachPlayer(parentAudioPlugin.getPlayerPool().acquire());
+    } else if (loadStrategy == LoadStrategy.PREPARED) {
+      reportReady = true;
+      prepareIfIdle();
+    }
 
     pauseAtEndpointRunnable = new PauseAtEndpointRunnable(this);
 
@@ -78,19 +209,223 @@ abstract class ManagedMediaPlayer
       Log.d(TAG, "mediasource is null");
     }
     handler = new Handler();
-    handler.post(updatePositionData);
+    if (reportReady && player.getPlaybackState() == Player.STATE_READY) {
+      // A preloaded player may be ready already; reported after the load completes.
+      reportReady = false;
+      handler.post(() -> parentAudioPlugin.handleReady(audioId));
+    }
+  }
+
+  private void recordStateStats(boolean playWhenReady, int playbackState) {
+    long nowMs = SystemClock.uptimeMillis();
+    PluginStats stats = parentAudioPlugin.getPluginStats();
+    if (playbackState == Player.STATE_READY) {
+      if (prepareStartTimeMs >= 0) {
+        stats.recordLoadToReady(nowMs - prepareStartTimeMs);
+        prepareStartTimeMs = -1;
+      }
+      if (rebufferStartTimeMs >= 0) {
+        stats.recordRebuffer(nowMs - rebufferStartTimeMs);
+        rebufferStartTimeMs = -1;
+      }
+      readySincePrepareOrSeek = true;
+    } else if (playbackState == Player.STATE_BUFFERING) {
+      if (playWhenReady && readySincePrepareOrSeek && rebufferStartTimeMs < 0) {
+        rebufferStartTimeMs = nowMs;
+      }
+    } else {
+      rebufferStartTimeMs = -1;
+    }
+  }
+
+  /**
+   * Adds a listener to the player, kept across re-acquisitions of the underlying {@link
+   * SimpleExoPlayer}; see {@link #detachPlayer()}. Listeners are added through the {@link
+   * PlayerPool}, which removes them when the player is recycled.
+   */
+  protected void addPlayerListener(Player.EventListener listener) {
+    playerListeners.add(listener);
+    if (player != null) {
+      parentAudioPlugin.getPlayerPool().addListener(player, listener);
+    }
+  }
+
+  private void attachPlayer(SimpleExoPlayer newPlayer) {
+    player = newPlayer;
+    for (Player.EventListener listener : playerListeners) {
+      parentAudioPlugin.getPlayerPool().addListener(player, listener);
+    }
+    player.setRepeatMode(looping ? Player.REPEAT_MODE_ALL : Player.REPEAT_MODE_OFF);
+    player.setVolume(volume);
+    loadControl = parentAudioPlugin.getPlayerPool().getLoadControl(player);
+    if (loadControl != null) {
+      loadControl.setLowMemory(lowMemoryBuffering);
+      loadControl.setPriority(player.getPlayWhenReady());
+    }
   }
 
-  public void setOnSeekCompleteListener(OnSeekCompleteListener onSeekCompleteListener) {
-    this.onSeekCompleteListener = onSeekCompleteListener;
+  /**
+   * Stops using the player, if any, and returns it to the {@link PlayerPool}. Its position is kept,
+   * and restored once a player is next prepared.
+   */
+  protected void detachPlayer() {
+    if (player == null) {
+      return;
+    }
+    parentAudioPlugin.getPositionTicker().stop(this);
+    if (player.getPlaybackState() != Player.STATE_IDLE) {
+      pendingWindowIndex = player.getCurrentWindowIndex();
+      pendingPositionMs = player.getCurrentPosition();
+    }
+    // Recycling removes the player's listeners.
+    parentAudioPlugin.getPlayerPool().recycle(player);
+    player = null;
+    loadControl = null;
+    // Seeks in flight are kept as the pending position, which is all a completed seek promises.
+    completePendingSeeks();
+  }
+
+  /** Acquires a player if there is none, and prepares it if it is idle. */
+  protected void prepareIfIdle() {
+    if (player == null) {
+      attachPlayer(parentAudioPlugin.getPlayerPool().acquire());
+    }
+    if (player.getPlaybackState() == Player.STATE_IDLE) {
+      prepareStartTimeMs = SystemClock.uptimeMillis();
+      readySincePrepareOrSeek = false;
+      boolean traced = Tracing.begin(Tracing.PREPARE);
+      try {
+        player.prepare(mediaSource);
+      } finally {
+        Tracing.end(traced);
+      }
+      if (pendingWindowIndex != 0 || pendingPositionMs != 0) {
+        player.seekTo(pendingWindowIndex, pendingPositionMs);
+        pendingWindowIndex = 0;
+        pendingPositionMs = 0;
+      }
+    }
+  }
+
+  /** Builds a media source which extracts audio from {@code uri}, read via the given factory. */
+  static MediaSource buildMediaSource(Uri uri, DataSource.Factory dataSourceFactory) {
+    boolean traced = Tracing.begin(Tracing.BUILD_MEDIA_SOURCE);
+    try {
+      return new ExtractorMediaSource(
+          uri, dataSourceFactory, new DefaultExtractorsFactory(), null, null);
+    } finally {
+      Tracing.end(traced);
+    }
+  }
+
+  private void completePendingSeeks() {
+    if (pendingSeekListeners.isEmpty()) {
+      return;
+    }
+    List<OnSeekCompleteListener> listeners = new ArrayList<>(pendingSeekListeners);
+    pendingSeekListeners.clear();
+    for (OnSeekCompleteListener listener : listeners) {
+      listener.onSeekComplete();
+    }
+  }
+
+  /** Returns whether the underlying {@link SimpleExoPlayer} is currently held. */
+  boolean hasPlayer() {
+    return player != null;
+  }
+
+  long getLastUseTimeMs() {
+    return lastUseTimeMs;
+  }
+
+  /**
+   * Returns whether the underlying player can be released to save memory: it is held, is not
+   * playing or buffering to play, and has no readiness report pending.
+   */
+  boolean isEvictable() {
+    if (player == null || reportReady) {
+      return false;
+    }
+    int playbackState = player.getPlaybackState();
+    return !player.getPlayWhenReady()
+        || (playbackState != Player.STATE_READY && playbackState != Player.STATE_BUFFERING);
+  }
+
+  /**
+   * Releases the underlying player and its buffers. Position, volume and looping are kept, and a
+   * player is acquired and prepared again on next play.
+   */
+  void evict() {
+    detachPlayer();
+  }
+
+  /**
+   * Selects the low-memory buffering profile, which buffers seconds rather than tens of seconds
+   * ahead; see {@link BufferBudget}.
+   */
+  void setLowMemoryBuffering(boolean lowMemoryBuffering) {
+    this.lowMemoryBuffering = lowMemoryBuffering;
+    if (loadControl != null) {
+      loadControl.setLowMemory(lowMemoryBuffering);
+    }
+  }
+
+  /**
+   * Reports the duration to the plugin once the player is next ready, rather than at load, or now
+   * if it is ready already (e.g. a preloaded player).
+   */
+  void reportDurationWhenReady() {
+    if (player != null && player.getPlaybackState() == Player.STATE_READY) {
+      parentAudioPlugin.handleDurationForPlayer(this, audioId, null);
+      return;
+    }
+    reportDurationWhenReady = true;
   }
 
   public String getAudioId() {
     return audioId;
   }
 
+  long getPositionUpdateIntervalMs() {
+    return positionUpdateIntervalMs;
+  }
+
+  /**
+   * Sets the interval between position reports for this player; pass 0 to use the plugin-wide
+   * interval.
+   */
+  void setPositionUpdateIntervalMs(long positionUpdateIntervalMs) {
+    this.positionUpdateIntervalMs = positionUpdateIntervalMs;
+    parentAudioPlugin.getPositionTicker().reschedule();
+  }
+
+  public double getPositionSeconds() {
+    long positionMs =
+        player != null && player.getPlaybackState() != Player.STATE_IDLE
+            ? player.getCurrentPosition()
+            : pendingPositionMs;
+    return (double) positionMs / 1000.0; // Convert ms to seconds.
+  }
+
+  public boolean isPlaying() {
+    return player != null && player.isPlaying();
+  }
+
+  /** Returns the rate at which the position currently advances: 0 unless playing. */
+  public double getEffectivePlaybackSpeed() {
+    return isPlaying() ? player.getPlaybackParameters().speed : 0.0;
+  }
+
+  /** Returns the duration, or -1 if it is not known yet (e.g. before the player is prepared). */
   public double getDurationSeconds() {
-    return (double) player.getDuration() / 1000.0; // Convert ms to seconds.
+    if (player == null) {
+      return -1;
+    }
+    long durationMs = player.getDuration();
+    if (durationMs == C.TIME_UNSET) {
+      return -1;
+    }
+    return (double) durationMs / 1000.0; // Convert ms to seconds.
   }
 
   /**
@@ -100,21 +435,25 @@ abstract class ManagedMediaPlayer
    *     #PLAY_TO_END}.
    */
   public void play(boolean playFromStart, int endpointMs) {
+    lastUseTimeMs = SystemClock.uptimeMillis();
+    if (!isPlaying()) {
+      playStartTimeMs = lastUseTimeMs;
+    }
     if (playFromStart) {
-      player.seekTo(0);
+      seek(0);
     }
     if (endpointMs == PLAY_TO_END) {
       handler.removeCallbacks(pauseAtEndpointRunnable);
-      if (player.getPlaybackState() == Player.STATE_ENDED)
+      if (player != null && player.getPlaybackState() == Player.STATE_ENDED)
         player.seekTo(0);
-      else if(player.getPlaybackState() == Player.STATE_IDLE)
-        player.prepare(mediaSource);
+      else
+        prepareIfIdle();
       player.setPlayWhenReady(true);
       //player.start();
     } else {
       // If there is an endpoint, check that it is in the future, then start playback and schedule
       // the pausing after a duration.
-      int positionMs = (int) player.getCurrentPosition();
+      int positionMs = (int) (getPositionSeconds() * 1000.0);
       int durationMs = endpointMs - positionMs;
       Log.i(TAG, "Called play() at " + positionMs + " ms, to play for " + durationMs + " ms.");
       if (durationMs <= 0) {
@@ -123,20 +462,18 @@ abstract class ManagedMediaPlayer
       }
       handler.removeCallbacks(pauseAtEndpointRunnable);
       //player.start();
-      if (player.getPlaybackState() == Player.STATE_ENDED)
+      if (player != null && player.getPlaybackState() == Player.STATE_ENDED)
         player.seekTo(0);
-      else if(player.getPlaybackState() == Player.STATE_IDLE)
-        player.prepare(mediaSource);
+      else
+        prepareIfIdle();
       player.setPlayWhenReady(true);
       handler.postDelayed(pauseAtEndpointRunnable, durationMs);
     }
   }
 
-  /** Releases the underlying MediaPlayer. */
+  /** Returns the underlying player to the shared {@link PlayerPool}. */
   public void release() {
-    player.stop();
-    //player.reset();
-    player.release();
+    detachPlayer();
 //    player.setOnErrorListener(null);
 //    player.setOnCompletionListener(null);
 //    player.setOnPreparedListener(null);
@@ -145,21 +482,58 @@ abstract class ManagedMediaPlayer
   }
 
   public void seek(double positionSeconds) {
+    seek(positionSeconds, null);
+  }
+
+  /**
+   * Seeks to {@code positionSeconds}, and calls {@code onSeekComplete}, if set, once the seek has
+   * been processed. Each seek's listener is called, however many seeks are in flight.
+   */
+  public void seek(double positionSeconds, @Nullable OnSeekCompleteListener onSeekComplete) {
+    lastUseTimeMs = SystemClock.uptimeMillis();
     int positionMilliseconds = (int) (positionSeconds * 1000.0);
-    player.seekTo(positionMilliseconds);
+    if (player != null && player.getPlaybackState() != Player.STATE_IDLE) {
+      readySincePrepareOrSeek = false;
+      rebufferStartTimeMs = -1;
+      if (onSeekComplete != null) {
+        pendingSeekListeners.add(onSeekComplete);
+      }
+      boolean traced = Tracing.begin(Tracing.SEEK);
+      try {
+        player.seekTo(positionMilliseconds);
+      } finally {
+        Tracing.end(traced);
+      }
+      return;
+    }
+    // Applied on prepare.
+    if (player != null) {
+      pendingWindowIndex = player.getCurrentWindowIndex();
+    }
+    pendingPositionMs = positionMilliseconds;
+    if (onSeekComplete != null) {
+      onSeekComplete.onSeekComplete();
+    }
   }
 
   public void setVolume(double volume) {
-    player.setVolume((float) volume);
+    this.volume = (float) volume;
+    if (player != null) {
+      player.setVolume(this.volume);
+    }
   }
 
   public void pause() {
-    player.setPlayWhenReady(false);
+    lastUseTimeMs = SystemClock.uptimeMillis();
+    playStartTimeMs = -1;
+    if (player != null) {
+      player.setPlayWhenReady(false);
+    }
   }
 
   @Override
   public void onCompletion(MediaPlayer mediaPlayer) {
-    player.seekTo(0);
+    seek(0);
     parentAudioPlugin.handleCompletion(this.audioId);
   }
 
@@ -177,9 +551,7 @@ abstract class ManagedMediaPlayer
 
   @Override
   public void onSeekComplete(MediaPlayer mp) {
-    if (onSeekCompleteListener != null) {
-      onSeekCompleteListener.onSeekComplete();
-    }
+    completePendingSeeks();
   }
 
   /** Pauses the player and notifies of completion. */
@@ -200,7 +572,7 @@ abstract class ManagedMediaPlayer
         Log.w(TAG, "ManagedMediaPlayer no longer active.");
         return;
       }
-      managedMediaPlayer.player.setPlayWhenReady(false);
+      managedMediaPlayer.pause();
       managedMediaPlayer.parentAudioPlugin.handleCompletion(managedMediaPlayer.audioId);
     }
   }
@@ -0,0 +1,165 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSourceException;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.FileDataSource;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An ExoPlayer DataSource implementation which reads a local file through a memory mapping.
+ *
+ * <p>The file is mapped on first open, and the mapping is shared through the {@link Factory} by
+ * subsequent opens (which ExoPlayer issues on every seek). Reads are then served directly from the
+ * page cache into the caller's buffer, without a read() syscall or an intermediate buffer per read.
+ *
+ * <p>A data source only holds the mapping while open, and the factory holds it weakly, so the file
+ * is unmapped once it is garbage collected after the last close, rather than when the player is.
+ *
+ * <p>Files too large to map into a single buffer are read via a {@link FileDataSource} instead.
+ */
+final class MappedFileDataSource extends BaseDataSource {
+  /** Creates {@link MappedFileDataSource}s of one file, sharing its mapping while reachable. */
+  static final class Factory implements DataSource.Factory {
+    private final String path;
+    private WeakReference<ByteBuffer> mapping = new WeakReference<>(null);
+
+    Factory(String path) {
+      this.path = path;
+    }
+
+    @Override
+    public DataSource createDataSource() {
+      return new MappedFileDataSource(this);
+    }
+
+    /**
+     * Returns a view of the file's mapping, with its own position, mapping the file if it is not
+     * mapped already; or null if the file is too large to map.
+     */
+    @Nullable
+    synchronized ByteBuffer map() throws IOException {
+      ByteBuffer mappedFile = mapping.get();
+      if (mappedFile == null) {
+        mappedFile = mapFile(path);
+        if (mappedFile == null) {
+          return null;
+        }
+        mapping = new WeakReference<>(mappedFile);
+      }
+      // The view keeps the mapping reachable while it is.
+      return mappedFile.duplicate();
+    }
+  }
+
+  private final Factory factory;
+  // The mapping, while open.
+  @Nullable private ByteBuffer mappedFile;
+  @Nullable private FileDataSource fallbackDataSource;
+  @Nullable private Uri uri;
+  private int bytesRemaining;
+  private boolean opened;
+
+  /** Factory for {@link MappedFileDataSource}s, each of which maps {@code path}. */
+  static DataSource.Factory factory(String path) {
+    return new Factory(path);
+  }
+
+  private MappedFileDataSource(Factory factory) {
+    super(/* isNetwork= */ false);
+    this.factory = factory;
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    uri = dataSpec.uri;
+    if (fallbackDataSource == null) {
+      mappedFile = factory.map();
+      if (mappedFile == null) {
+        fallbackDataSource = new FileDataSource();
+      }
+    }
+    if (fallbackDataSource != null) {
+      return fallbackDataSource.open(dataSpec);
+    }
+
+    transferInitializing(dataSpec);
+    ByteBuffer buffer = mappedFile;
+    if (dataSpec.position > buffer.capacity()) {
+      throw new DataSourceException(DataSourceException.POSITION_OUT_OF_RANGE);
+    }
+    buffer.position((int) dataSpec.position);
+    bytesRemaining = buffer.remaining();
+    if (dataSpec.length != C.LENGTH_UNSET) {
+      if (dataSpec.length > bytesRemaining) {
+        throw new DataSourceException(DataSourceException.POSITION_OUT_OF_RANGE);
+      }
+      bytesRemaining = (int) dataSpec.length;
+    }
+    opened = true;
+    transferStarted(dataSpec);
+    return bytesRemaining;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (fallbackDataSource != null) {
+      return fallbackDataSource.read(buffer, offset, readLength);
+    }
+    if (readLength == 0) {
+      return 0;
+    }
+    if (bytesRemaining == 0) {
+      // Indicate end of stream.
+      return C.RESULT_END_OF_INPUT;
+    }
+    int readSize = Math.min(readLength, bytesRemaining);
+    mappedFile.get(buffer, offset, readSize);
+    bytesRemaining -= readSize;
+    bytesTransferred(readSize);
+    return readSize;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public void close() throws IOException {
+    uri = null;
+    if (fallbackDataSource != null) {
+      fallbackDataSource.close();
+      return;
+    }
+    mappedFile = null;
+    if (opened) {
+      opened = false;
+      transferEnded();
+    }
+  }
+
+  /** Maps the whole file read-only, returning null if it is too large to map. */
+  @Nullable
+  private static MappedByteBuffer mapFile(String path) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(path, "r");
+        FileChannel channel = file.getChannel()) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        return null;
+      }
+      // The mapping remains valid after the channel is closed.
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+  }
+}
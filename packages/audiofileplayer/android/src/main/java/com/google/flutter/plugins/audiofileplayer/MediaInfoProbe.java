@@ -0,0 +1,161 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import io.flutter.embedding.engine.loader.FlutterLoader;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reads the duration, sample rate and channel count of local audio from its container headers,
+ * without preparing a player.
+ *
+ * <p>Results are kept in a persistent index (in {@link SharedPreferences}), keyed by the source and
+ * its modification time, so that later loads of the same unchanged source, including across
+ * launches, skip the probe entirely. Probing does I/O, so must be called off the main thread.
+ */
+class MediaInfoProbe {
+  private static final String TAG = MediaInfoProbe.class.getSimpleName();
+  private static final String PREFERENCES_NAME = "audiofileplayer_media_info";
+  // The index is cleared when it grows beyond this many entries, e.g. from many rewritten files.
+  private static final int MAX_INDEX_ENTRIES = 512;
+
+  /** Header information of an audio source. */
+  static final class MediaInfo {
+    final long durationUs;
+    final int sampleRate;
+    final int channelCount;
+
+    MediaInfo(long durationUs, int sampleRate, int channelCount) {
+      this.durationUs = durationUs;
+      this.sampleRate = sampleRate;
+      this.channelCount = channelCount;
+    }
+
+    double getDurationSeconds() {
+      return durationUs / 1000000.0;
+    }
+
+    private String encode() {
+      return durationUs + "," + sampleRate + "," + channelCount;
+    }
+
+    @Nullable
+    private static MediaInfo decode(@Nullable String encoded) {
+      if (encoded == null) {
+        return null;
+      }
+      String[] fields = encoded.split(",");
+      try {
+        return new MediaInfo(
+            Long.parseLong(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]));
+      } catch (RuntimeException e) {
+        return null;
+      }
+    }
+  }
+
+  private final Context context;
+  private SharedPreferences index;
+
+  MediaInfoProbe(Context context) {
+    this.context = context;
+  }
+
+  /** Returns the header information of a flutter asset, or null if it cannot be read. */
+  @Nullable
+  MediaInfo probeFlutterAsset(String flutterPath) {
+    String assetKey = FlutterLoader.getInstance().getLookupKeyForAsset(flutterPath);
+    // Assets only change when the app is updated, which rewrites the APK.
+    long apkModified = new File(context.getApplicationInfo().sourceDir).lastModified();
+    String indexKey = "asset:" + assetKey + "@" + apkModified;
+    MediaInfo info = MediaInfo.decode(getIndex().getString(indexKey, null));
+    if (info != null) {
+      return info;
+    }
+    MediaExtractor extractor = new MediaExtractor();
+    try {
+      try (AssetFileDescriptor fd = context.getAssets().openFd(assetKey)) {
+        extractor.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+      }
+      info = readMediaInfo(extractor);
+    } catch (IOException | RuntimeException e) {
+      Log.w(TAG, "Could not probe asset " + flutterPath, e);
+      return null;
+    } finally {
+      extractor.release();
+    }
+    putIndexEntry(indexKey, info);
+    return info;
+  }
+
+  /** Returns the header information of an audio file, or null if it cannot be read. */
+  @Nullable
+  MediaInfo probeFile(String path) {
+    File file = new File(path);
+    String indexKey = "file:" + path + "@" + file.lastModified() + ":" + file.length();
+    MediaInfo info = MediaInfo.decode(getIndex().getString(indexKey, null));
+    if (info != null) {
+      return info;
+    }
+    MediaExtractor extractor = new MediaExtractor();
+    try {
+      extractor.setDataSource(path);
+      info = readMediaInfo(extractor);
+    } catch (IOException | RuntimeException e) {
+      Log.w(TAG, "Could not probe file " + path, e);
+      return null;
+    } finally {
+      extractor.release();
+    }
+    putIndexEntry(indexKey, info);
+    return info;
+  }
+
+  private synchronized SharedPreferences getIndex() {
+    if (index == null) {
+      index = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+    return index;
+  }
+
+  private void putIndexEntry(String indexKey, @Nullable MediaInfo info) {
+    if (info == null) {
+      return;
+    }
+    SharedPreferences.Editor editor = getIndex().edit();
+    if (getIndex().getAll().size() >= MAX_INDEX_ENTRIES) {
+      editor.clear();
+    }
+    editor.putString(indexKey, info.encode()).apply();
+  }
+
+  /** Reads the first audio track's format, or returns null if there is none or no duration. */
+  @Nullable
+  private static MediaInfo readMediaInfo(MediaExtractor extractor) {
+    for (int i = 0; i < extractor.getTrackCount(); i++) {
+      MediaFormat format = extractor.getTrackFormat(i);
+      String mime = format.getString(MediaFormat.KEY_MIME);
+      if (mime == null || !mime.startsWith("audio/")) {
+        continue;
+      }
+      if (!format.containsKey(MediaFormat.KEY_DURATION)) {
+        return null;
+      }
+      return new MediaInfo(
+          format.getLong(MediaFormat.KEY_DURATION),
+          format.containsKey(MediaFormat.KEY_SAMPLE_RATE)
+              ? format.getInteger(MediaFormat.KEY_SAMPLE_RATE)
+              : 0,
+          format.containsKey(MediaFormat.KEY_CHANNEL_COUNT)
+              ? format.getInteger(MediaFormat.KEY_CHANNEL_COUNT)
+              : 0);
+    }
+    return null;
+  }
+}
@@ -0,0 +1,89 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.util.Log;
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the results of an ordered batch of method calls, and replies with all of them once
+ * every call has completed.
+ *
+ * <p>Calls may complete asynchronously (e.g. seek, or loading remote audio), so the reply is sent
+ * when the last one completes rather than when the batch has been dispatched. Each call's result is
+ * a map with a "status" of "success" (with a "result"), "error" (with "code", "message" and
+ * "details") or "notImplemented".
+ */
+class MethodCallBatch {
+  private static final String TAG = MethodCallBatch.class.getSimpleName();
+  static final String STATUS = "status";
+  static final String STATUS_SUCCESS = "success";
+  static final String STATUS_ERROR = "error";
+  static final String STATUS_NOT_IMPLEMENTED = "notImplemented";
+
+  private final Result batchResult;
+  private final List<Map<String, Object>> results;
+  // Calls not yet completed, plus one until dispatch of the whole batch has finished.
+  private int pendingCount;
+
+  MethodCallBatch(int size, Result batchResult) {
+    this.batchResult = batchResult;
+    this.results = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      results.add(null);
+    }
+    this.pendingCount = size + 1;
+  }
+
+  /** Returns the {@link Result} for the call at {@code index}. */
+  Result resultFor(int index) {
+    return new Result() {
+      @Override
+      public void success(Object result) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put(STATUS, STATUS_SUCCESS);
+        entry.put("result", result);
+        complete(index, entry);
+      }
+
+      @Override
+      public void error(String errorCode, String errorMessage, Object errorDetails) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put(STATUS, STATUS_ERROR);
+        entry.put("code", errorCode);
+        entry.put("message", errorMessage);
+        entry.put("details", errorDetails);
+        complete(index, entry);
+      }
+
+      @Override
+      public void notImplemented() {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put(STATUS, STATUS_NOT_IMPLEMENTED);
+        complete(index, entry);
+      }
+    };
+  }
+
+  /** Called once every call in the batch has been dispatched. */
+  void onDispatched() {
+    onCompleted();
+  }
+
+  private void complete(int index, Map<String, Object> entry) {
+    if (results.get(index) != null) {
+      Log.w(TAG, "Ignoring a second result for batch call " + index);
+      return;
+    }
+    results.set(index, entry);
+    onCompleted();
+  }
+
+  private void onCompleted() {
+    if (--pendingCount == 0) {
+      batchResult.success(results);
+    }
+  }
+}
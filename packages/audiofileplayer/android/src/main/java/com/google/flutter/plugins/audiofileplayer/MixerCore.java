@@ -0,0 +1,259 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mixes any number of in-memory PCM sources into a single interleaved 16-bit stereo stream.
+ *
+ * <p>Each source is a clip at the output sample rate (see {@link #resampleToStereo}) with its own
+ * volume, looping flag, play/pause state and position. A source can additionally be triggered as
+ * one-shot voices, which play the clip from the start alongside any other voices of it.
+ *
+ * <p>Free of Android dependencies so it can be tested on the JVM. Not thread-safe.
+ */
+final class MixerCore {
+  static final int CHANNEL_COUNT = 2;
+
+  private static final class Source {
+    final short[] samples;
+    final int frameCount;
+    float volume = 1.0f;
+    boolean looping;
+    boolean playing;
+    int frame;
+
+    Source(short[] samples) {
+      this.samples = samples;
+      this.frameCount = samples.length / CHANNEL_COUNT;
+    }
+  }
+
+  /** A one-shot instance of a source's clip. */
+  private static final class Voice {
+    final String id;
+    final Source source;
+    int frame;
+
+    Voice(String id, Source source) {
+      this.id = id;
+      this.source = source;
+    }
+  }
+
+  private final Map<String, Source> sources = new LinkedHashMap<>();
+  private final List<Voice> voices = new ArrayList<>();
+  private final int maxVoices;
+  private int[] accumulator = new int[0];
+
+  /** @param maxVoices the maximum number of simultaneous voices; the oldest are dropped first. */
+  MixerCore(int maxVoices) {
+    this.maxVoices = maxVoices;
+  }
+
+  /** Adds a paused source of interleaved stereo {@code samples}, replacing any with the same id. */
+  void addSource(String id, short[] samples, boolean looping) {
+    removeSource(id);
+    Source source = new Source(samples);
+    source.looping = looping;
+    sources.put(id, source);
+  }
+
+  /** Removes a source and any of its voices. */
+  void removeSource(String id) {
+    sources.remove(id);
+    stopVoices(id);
+  }
+
+  boolean hasSource(String id) {
+    return sources.containsKey(id);
+  }
+
+  void play(String id) {
+    Source source = sources.get(id);
+    if (source != null) {
+      source.playing = true;
+    }
+  }
+
+  void pause(String id) {
+    Source source = sources.get(id);
+    if (source != null) {
+      source.playing = false;
+    }
+  }
+
+  /** Moves a source to {@code frame}, clamped to its length. */
+  void seek(String id, int frame) {
+    Source source = sources.get(id);
+    if (source != null) {
+      source.frame = Math.max(0, Math.min(frame, source.frameCount));
+    }
+  }
+
+  /** Returns the current frame of a source, or -1 if there is no such source. */
+  int getFrame(String id) {
+    Source source = sources.get(id);
+    return source == null ? -1 : source.frame;
+  }
+
+  boolean isPlaying(String id) {
+    Source source = sources.get(id);
+    return source != null && source.playing;
+  }
+
+  /** Sets the volume of a source, which also applies to its voices. */
+  void setVolume(String id, float volume) {
+    Source source = sources.get(id);
+    if (source != null) {
+      source.volume = volume;
+    }
+  }
+
+  void setLooping(String id, boolean looping) {
+    Source source = sources.get(id);
+    if (source != null) {
+      source.looping = looping;
+    }
+  }
+
+  /** Starts a one-shot voice of a source's clip, from its start. */
+  void trigger(String id) {
+    Source source = sources.get(id);
+    if (source == null) {
+      return;
+    }
+    if (voices.size() >= maxVoices) {
+      voices.remove(0);
+    }
+    voices.add(new Voice(id, source));
+  }
+
+  /** Stops all voices of a source. */
+  void stopVoices(String id) {
+    Iterator<Voice> iterator = voices.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().id.equals(id)) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /** Whether any source is playing or any voice is active. */
+  boolean isActive() {
+    if (!voices.isEmpty()) {
+      return true;
+    }
+    for (Source source : sources.values()) {
+      if (source.playing) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Renders the next {@code frameCount} frames of all playing sources and voices into {@code
+   * output}, clipping the sum to the 16-bit range.
+   *
+   * <p>Non-looping sources which reach their end are paused and rewound, and their ids are added to
+   * {@code completedIds}.
+   */
+  void render(short[] output, int frameCount, List<String> completedIds) {
+    int sampleCount = frameCount * CHANNEL_COUNT;
+    if (accumulator.length < sampleCount) {
+      accumulator = new int[sampleCount];
+    }
+    Arrays.fill(accumulator, 0, sampleCount, 0);
+
+    for (Map.Entry<String, Source> entry : sources.entrySet()) {
+      Source source = entry.getValue();
+      if (!source.playing) {
+        continue;
+      }
+      int mixed = 0;
+      while (mixed < frameCount) {
+        int frames = Math.min(frameCount - mixed, source.frameCount - source.frame);
+        mix(source.samples, source.frame, source.volume, mixed, frames);
+        mixed += frames;
+        source.frame += frames;
+        if (source.frame < source.frameCount) {
+          continue;
+        }
+        source.frame = 0;
+        if (!source.looping || source.frameCount == 0) {
+          source.playing = false;
+          completedIds.add(entry.getKey());
+          break;
+        }
+      }
+    }
+
+    Iterator<Voice> iterator = voices.iterator();
+    while (iterator.hasNext()) {
+      Voice voice = iterator.next();
+      int frames = Math.min(frameCount, voice.source.frameCount - voice.frame);
+      mix(voice.source.samples, voice.frame, voice.source.volume, 0, frames);
+      voice.frame += frames;
+      if (voice.frame >= voice.source.frameCount) {
+        iterator.remove();
+      }
+    }
+
+    for (int i = 0; i < sampleCount; i++) {
+      output[i] = clip(accumulator[i]);
+    }
+  }
+
+  private void mix(short[] samples, int fromFrame, float volume, int toFrame, int frames) {
+    int from = fromFrame * CHANNEL_COUNT;
+    int to = toFrame * CHANNEL_COUNT;
+    for (int i = 0; i < frames * CHANNEL_COUNT; i++) {
+      accumulator[to + i] += Math.round(samples[from + i] * volume);
+    }
+  }
+
+  /** Clamps a mixed sample to the 16-bit range. */
+  static short clip(int sample) {
+    return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+  }
+
+  /**
+   * Converts interleaved PCM to stereo at {@code outputSampleRate}, using linear interpolation.
+   *
+   * <p>Mono input is duplicated to both channels; input with more than two channels keeps only the
+   * first two.
+   *
+   * @param input interleaved samples, {@code channelCount} per frame.
+   * @param inputLength number of valid samples in {@code input}.
+   */
+  static short[] resampleToStereo(
+      short[] input, int inputLength, int channelCount, int inputSampleRate, int outputSampleRate) {
+    int inputFrames = inputLength / channelCount;
+    int outputFrames = (int) ((long) inputFrames * outputSampleRate / inputSampleRate);
+    short[] output = new short[outputFrames * CHANNEL_COUNT];
+    int rightChannel = channelCount > 1 ? 1 : 0;
+    for (int i = 0; i < outputFrames; i++) {
+      double inputPosition = (double) i * inputSampleRate / outputSampleRate;
+      int frame = (int) inputPosition;
+      double fraction = inputPosition - frame;
+      int nextFrame = Math.min(frame + 1, inputFrames - 1);
+      output[i * 2] =
+          interpolate(input[frame * channelCount], input[nextFrame * channelCount], fraction);
+      output[i * 2 + 1] =
+          interpolate(
+              input[frame * channelCount + rightChannel],
+              input[nextFrame * channelCount + rightChannel],
+              fraction);
+    }
+    return output;
+  }
+
+  private static short interpolate(short a, short b, double fraction) {
+    return (short) Math.round(a + (b - a) * fraction);
+  }
+}
@@ -0,0 +1,358 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Plays in-memory PCM clips through one shared low-latency {@link AudioTrack}, mixed by a {@link
+ * MixerCore}.
+ *
+ * <p>Clips are decoded once to PCM at the output sample rate (see {@link PcmDecoder}) and kept in
+ * memory, up to a configurable total size. A clip is either a sound effect, where each trigger adds
+ * an overlapping one-shot voice, or a mixed source with its own play/pause state, position, volume
+ * and looping. Either way, many concurrent sounds share one output track instead of a decoder and
+ * AudioTrack each. The output thread blocks while nothing is playing.
+ */
+class MixerEngine {
+  private static final String TAG = MixerEngine.class.getSimpleName();
+  static final long DEFAULT_MEMORY_CAP_BYTES = 16 * 1024 * 1024;
+  private static final int DEFAULT_SAMPLE_RATE = 44100;
+  private static final int DEFAULT_FRAMES_PER_BUFFER = 256;
+  // Oldest voices are dropped beyond this many simultaneous sound effect voices.
+  private static final int MAX_VOICES = 32;
+  // How often the output thread checks the playback head while queued audio plays out.
+  private static final long DRAIN_POLL_MS = 5;
+
+  /** A source which has finished rendering, reported once its last frame has been played. */
+  private static final class PendingCompletion {
+    final String audioId;
+    final long frame;
+
+    PendingCompletion(String audioId, long frame) {
+      this.audioId = audioId;
+      this.frame = frame;
+    }
+  }
+
+  interface OnSourceCompleteListener {
+    /** Called, on the output thread, when a non-looping mixed source plays to its end. */
+    void onSourceComplete(String audioId);
+  }
+
+  private final int sampleRate;
+  private final int framesPerBuffer;
+  private final OnSourceCompleteListener onSourceCompleteListener;
+  private final Object lock = new Object();
+  // All fields below are guarded by lock.
+  private final MixerCore mixer = new MixerCore(MAX_VOICES);
+  private final Map<String, PcmClip> clips = new HashMap<>();
+  private final Set<String> soundEffectIds = new HashSet<>();
+  private long memoryCapBytes = DEFAULT_MEMORY_CAP_BYTES;
+  private long memoryUsedBytes;
+  private Thread outputThread;
+  private boolean released;
+  // Used by the output thread only: frames written to, and played by, its AudioTrack.
+  private final ArrayDeque<PendingCompletion> pendingCompletions = new ArrayDeque<>();
+  private long writtenFrames;
+  private long playedFrames;
+  private int lastHeadPosition;
+
+  MixerEngine(Context context, OnSourceCompleteListener onSourceCompleteListener) {
+    this.onSourceCompleteListener = onSourceCompleteListener;
+    int sampleRate = DEFAULT_SAMPLE_RATE;
+    int framesPerBuffer = DEFAULT_FRAMES_PER_BUFFER;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+      // Matching the device's native output avoids resampling and buffering after the mixer.
+      AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+      sampleRate =
+          parseIntOrDefault(
+              audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE), sampleRate);
+      framesPerBuffer =
+          parseIntOrDefault(
+              audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER),
+              framesPerBuffer);
+    }
+    this.sampleRate = sampleRate;
+    this.framesPerBuffer = framesPerBuffer;
+  }
+
+  /** Sample rate to which clips must be decoded. */
+  int getSampleRate() {
+    return sampleRate;
+  }
+
+  boolean hasClip(String audioId) {
+    synchronized (lock) {
+      return clips.containsKey(audioId);
+    }
+  }
+
+  boolean isSoundEffect(String audioId) {
+    synchronized (lock) {
+      return soundEffectIds.contains(audioId);
+    }
+  }
+
+  /** Bytes of decoded PCM held for loaded clips. */
+  long getMemoryUsedBytes() {
+    synchronized (lock) {
+      return memoryUsedBytes;
+    }
+  }
+
+  /** Bytes still available under the memory cap. */
+  long getRemainingBytes() {
+    synchronized (lock) {
+      return Math.max(0, memoryCapBytes - memoryUsedBytes);
+    }
+  }
+
+  void setMemoryCapBytes(long memoryCapBytes) {
+    synchronized (lock) {
+      this.memoryCapBytes = memoryCapBytes;
+    }
+  }
+
+  /**
+   * Adds a decoded clip, as a sound effect or as a (paused) mixed source.
+   *
+   * @throws IllegalStateException if the clip would exceed the memory cap.
+   */
+  void addClip(String audioId, PcmClip clip, boolean soundEffect, boolean looping) {
+    synchronized (lock) {
+      if (memoryUsedBytes + clip.getSizeBytes() > memoryCapBytes) {
+        throw new IllegalStateException(
+            String.format(
+                "Clip of %d bytes exceeds the remaining %d of %d bytes.",
+                clip.getSizeBytes(), memoryCapBytes - memoryUsedBytes, memoryCapBytes));
+      }
+      clips.put(audioId, clip);
+      if (soundEffect) {
+        soundEffectIds.add(audioId);
+      }
+      mixer.addSource(audioId, clip.samples, looping);
+      memoryUsedBytes += clip.getSizeBytes();
+    }
+  }
+
+  PcmClip getClip(String audioId) {
+    synchronized (lock) {
+      return clips.get(audioId);
+    }
+  }
+
+  /** Starts a new voice of the clip, alongside any voices already playing. */
+  void trigger(String audioId) {
+    synchronized (lock) {
+      mixer.trigger(audioId);
+      wakeOutput();
+    }
+  }
+
+  /** Stops all voices of the clip. */
+  void stopVoices(String audioId) {
+    synchronized (lock) {
+      mixer.stopVoices(audioId);
+    }
+  }
+
+  void play(String audioId) {
+    synchronized (lock) {
+      mixer.play(audioId);
+      wakeOutput();
+    }
+  }
+
+  void pause(String audioId) {
+    synchronized (lock) {
+      mixer.pause(audioId);
+    }
+  }
+
+  void seek(String audioId, double positionSeconds) {
+    synchronized (lock) {
+      mixer.seek(audioId, (int) Math.round(positionSeconds * sampleRate));
+    }
+  }
+
+  /** Sets the volume of the clip, applying to voices already playing. */
+  void setVolume(String audioId, double volume) {
+    synchronized (lock) {
+      mixer.setVolume(audioId, (float) volume);
+    }
+  }
+
+  void removeClip(String audioId) {
+    synchronized (lock) {
+      mixer.removeSource(audioId);
+      soundEffectIds.remove(audioId);
+      PcmClip clip = clips.remove(audioId);
+      if (clip != null) {
+        memoryUsedBytes -= clip.getSizeBytes();
+      }
+    }
+  }
+
+  /** Drops all clips and stops the output thread. */
+  void release() {
+    synchronized (lock) {
+      released = true;
+      for (String audioId : clips.keySet()) {
+        mixer.removeSource(audioId);
+      }
+      clips.clear();
+      soundEffectIds.clear();
+      memoryUsedBytes = 0;
+      lock.notifyAll();
+    }
+  }
+
+  private void wakeOutput() {
+    if (released) {
+      return;
+    }
+    if (outputThread == null) {
+      outputThread = new Thread(this::runOutput, TAG);
+      outputThread.start();
+    }
+    lock.notifyAll();
+  }
+
+  /**
+   * Output thread loop: renders the mix into the AudioTrack, blocking while nothing plays.
+   *
+   * <p>A write returns as soon as its buffer is queued, so once the mix goes quiet the track is
+   * left playing until its playback head reaches the last written frame, and only then paused.
+   * Completions are likewise reported once the source's last frame has been played.
+   */
+  private void runOutput() {
+    Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+    AudioTrack track = createAudioTrack();
+    short[] buffer = new short[framesPerBuffer * MixerCore.CHANNEL_COUNT];
+    List<String> completedIds = new ArrayList<>();
+    pendingCompletions.clear();
+    writtenFrames = 0;
+    playedFrames = 0;
+    lastHeadPosition = 0;
+    try {
+      while (true) {
+        boolean active;
+        synchronized (lock) {
+          if (!mixer.isActive() && !released) {
+            if (updatePlayedFrames(track) < writtenFrames) {
+              // Let queued audio play out, waking early for new sounds.
+              lock.wait(DRAIN_POLL_MS);
+            } else {
+              track.pause();
+              while (!mixer.isActive() && !released) {
+                lock.wait();
+              }
+            }
+          }
+          if (released) {
+            return;
+          }
+          active = mixer.isActive();
+          if (active) {
+            mixer.render(buffer, framesPerBuffer, completedIds);
+          }
+        }
+        if (active) {
+          for (String audioId : completedIds) {
+            pendingCompletions.add(new PendingCompletion(audioId, writtenFrames + framesPerBuffer));
+          }
+          completedIds.clear();
+          if (track.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) {
+            track.play();
+          }
+          // Blocks until there is room, which paces this loop at the output rate.
+          track.write(buffer, 0, buffer.length);
+          writtenFrames += framesPerBuffer;
+        }
+        long played = updatePlayedFrames(track);
+        while (!pendingCompletions.isEmpty() && pendingCompletions.peek().frame <= played) {
+          onSourceCompleteListener.onSourceComplete(pendingCompletions.poll().audioId);
+        }
+      }
+    } catch (InterruptedException e) {
+      Log.w(TAG, "Mixer output interrupted.");
+    } finally {
+      // Queued audio is dropped only here, on release.
+      if (track.getState() == AudioTrack.STATE_INITIALIZED) {
+        track.pause();
+        track.flush();
+      }
+      track.release();
+      synchronized (lock) {
+        outputThread = null;
+      }
+    }
+  }
+
+  /**
+   * Returns the frames played by {@code track} since it was created, from its playback head
+   * position, which is an unsigned 32-bit count that wraps around.
+   */
+  private long updatePlayedFrames(AudioTrack track) {
+    int headPosition = track.getPlaybackHeadPosition();
+    playedFrames += (headPosition - lastHeadPosition) & 0xffffffffL;
+    lastHeadPosition = headPosition;
+    return playedFrames;
+  }
+
+  private AudioTrack createAudioTrack() {
+    int minBufferSize =
+        AudioTrack.getMinBufferSize(
+            sampleRate, AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_16BIT);
+    int bufferSize = Math.max(minBufferSize, framesPerBuffer * MixerCore.CHANNEL_COUNT * 2);
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+      return new AudioTrack.Builder()
+          .setAudioAttributes(
+              new AudioAttributes.Builder()
+                  .setUsage(AudioAttributes.USAGE_GAME)
+                  .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                  .build())
+          .setAudioFormat(
+              new AudioFormat.Builder()
+                  .setSampleRate(sampleRate)
+                  .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                  .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                  .build())
+          .setBufferSizeInBytes(bufferSize)
+          .setTransferMode(AudioTrack.MODE_STREAM)
+          .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+          .build();
+    }
+    return new AudioTrack(
+        AudioManager.STREAM_MUSIC,
+        sampleRate,
+        AudioFormat.CHANNEL_OUT_STEREO,
+        AudioFormat.ENCODING_PCM_16BIT,
+        bufferSize,
+        AudioTrack.MODE_STREAM);
+  }
+
+  private static int parseIntOrDefault(String value, int defaultValue) {
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+/**
+ * Decoded audio held in memory as interleaved 16-bit stereo PCM, at the sample rate of the output
+ * it will be played through.
+ */
+final class PcmClip {
+  final short[] samples;
+  final int frameCount;
+  final int sampleRate;
+
+  PcmClip(short[] samples, int sampleRate) {
+    this.samples = samples;
+    this.frameCount = samples.length / MixerCore.CHANNEL_COUNT;
+    this.sampleRate = sampleRate;
+  }
+
+  long getSizeBytes() {
+    return samples.length * 2L;
+  }
+
+  double getDurationSeconds() {
+    return (double) frameCount / sampleRate;
+  }
+
+  /** Converts decoded PCM to a stereo clip at {@code outputSampleRate}. */
+  static PcmClip fromDecoded(
+      short[] input, int inputLength, int channelCount, int inputSampleRate, int outputSampleRate) {
+    return new PcmClip(
+        MixerCore.resampleToStereo(
+            input, inputLength, channelCount, inputSampleRate, outputSampleRate),
+        outputSampleRate);
+  }
+}
@@ -0,0 +1,142 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/** Decodes the first audio track of a {@link MediaExtractor} into a {@link PcmClip}. */
+final class PcmDecoder {
+  private static final long TIMEOUT_US = 10000;
+
+  private PcmDecoder() {}
+
+  /**
+   * Decodes all audio from {@code extractor}, which is released afterwards.
+   *
+   * @param maxBytes the maximum size of the decoded clip.
+   * @throws IOException if there is no audio track, decoding fails, or the decoded clip would be
+   *     larger than {@code maxBytes}.
+   */
+  static PcmClip decode(MediaExtractor extractor, int outputSampleRate, long maxBytes)
+      throws IOException {
+    MediaCodec codec = null;
+    try {
+      MediaFormat format = null;
+      for (int i = 0; i < extractor.getTrackCount(); i++) {
+        MediaFormat trackFormat = extractor.getTrackFormat(i);
+        String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+        if (mime != null && mime.startsWith("audio/")) {
+          extractor.selectTrack(i);
+          format = trackFormat;
+          break;
+        }
+      }
+      if (format == null) {
+        throw new IOException("No audio track found.");
+      }
+      int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+      int channelCount = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+
+      codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+      codec.configure(format, null, null, 0);
+      codec.start();
+      // Buffer arrays are only used below API 21, where buffers cannot be fetched by index.
+      ByteBuffer[] inputBuffers = null;
+      ByteBuffer[] outputBuffers = null;
+      if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+        inputBuffers = getInputBuffers(codec);
+        outputBuffers = getOutputBuffers(codec);
+      }
+      MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+      short[] samples = new short[64 * 1024];
+      int sampleCount = 0;
+      boolean inputDone = false;
+      boolean outputDone = false;
+      while (!outputDone) {
+        if (!inputDone) {
+          int inputIndex = codec.dequeueInputBuffer(TIMEOUT_US);
+          if (inputIndex >= 0) {
+            ByteBuffer inputBuffer = getInputBuffer(codec, inputBuffers, inputIndex);
+            int size = extractor.readSampleData(inputBuffer, 0);
+            if (size < 0) {
+              codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+              inputDone = true;
+            } else {
+              codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+              extractor.advance();
+            }
+          }
+        }
+
+        int outputIndex = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+        if (outputIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+          if (outputBuffers != null) {
+            outputBuffers = getOutputBuffers(codec);
+          }
+        } else if (outputIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+          MediaFormat outputFormat = codec.getOutputFormat();
+          sampleRate = outputFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+          channelCount = outputFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        } else if (outputIndex >= 0) {
+          ByteBuffer outputBuffer = getOutputBuffer(codec, outputBuffers, outputIndex);
+          outputBuffer.position(info.offset);
+          outputBuffer.limit(info.offset + info.size);
+          ShortBuffer pcm = outputBuffer.order(ByteOrder.nativeOrder()).asShortBuffer();
+          int count = pcm.remaining();
+          if ((long) (sampleCount + count) * 2 > maxBytes) {
+            throw new IOException("Decoded audio exceeds " + maxBytes + " bytes.");
+          }
+          if (sampleCount + count > samples.length) {
+            samples = Arrays.copyOf(samples, Math.max(samples.length * 2, sampleCount + count));
+          }
+          pcm.get(samples, sampleCount, count);
+          sampleCount += count;
+          outputBuffer.clear();
+          codec.releaseOutputBuffer(outputIndex, false);
+          outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+        }
+      }
+      return PcmClip.fromDecoded(samples, sampleCount, channelCount, sampleRate, outputSampleRate);
+    } catch (IllegalStateException e) {
+      throw new IOException("Could not decode audio.", e);
+    } finally {
+      if (codec != null) {
+        codec.release();
+      }
+      extractor.release();
+    }
+  }
+
+  /** Returns an input buffer, from {@code inputBuffers} below API 21 and by index otherwise. */
+  @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+  private static ByteBuffer getInputBuffer(
+      MediaCodec codec, @Nullable ByteBuffer[] inputBuffers, int index) {
+    return inputBuffers != null ? inputBuffers[index] : codec.getInputBuffer(index);
+  }
+
+  /** Returns an output buffer, from {@code outputBuffers} below API 21 and by index otherwise. */
+  @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+  private static ByteBuffer getOutputBuffer(
+      MediaCodec codec, @Nullable ByteBuffer[] outputBuffers, int index) {
+    return outputBuffers != null ? outputBuffers[index] : codec.getOutputBuffer(index);
+  }
+
+  @SuppressWarnings("deprecation")
+  private static ByteBuffer[] getInputBuffers(MediaCodec codec) {
+    return codec.getInputBuffers();
+  }
+
+  @SuppressWarnings("deprecation")
+  private static ByteBuffer[] getOutputBuffers(MediaCodec codec) {
+    return codec.getOutputBuffers();
+  }
+}
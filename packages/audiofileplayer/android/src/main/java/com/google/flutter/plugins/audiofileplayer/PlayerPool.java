@@ -0,0 +1,170 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.content.Context;
+import android.os.Looper;
+import android.util.Log;
+import com.google.android.exoplayer2.PlaybackParameters;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded pool of {@link SimpleExoPlayer} instances shared by all {@link ManagedMediaPlayer}s.
+ *
+ * <p>Building a SimpleExoPlayer creates its renderers, track selector and internal playback thread;
+ * recycling players on release lets subsequent loads skip that construction. Recycling stops the
+ * player, which releases its codecs and audio track, so those are still set up again on the next
+ * prepare. Players are reset to a neutral state, and listeners added through {@link #addListener}
+ * are removed, before they are handed out again.
+ *
+ * <p>Players are built on the given application looper, each with its own load control drawing on
+ * the shared {@link BufferBudget}. Not thread-safe; must be used from that looper's thread.
+ */
+class PlayerPool {
+  private static final String TAG = PlayerPool.class.getSimpleName();
+  static final int DEFAULT_MAX_SIZE = 4;
+
+  private final Context context;
+  private final Looper looper;
+  private final BufferBudget bufferBudget;
+  private final Map<SimpleExoPlayer, BufferBudget.PlayerLoadControl> loadControls =
+      new IdentityHashMap<>();
+  // Listeners added to each player handed out, removed when it is recycled.
+  private final Map<SimpleExoPlayer, List<Player.EventListener>> listeners =
+      new IdentityHashMap<>();
+  private final ArrayDeque<SimpleExoPlayer> idlePlayers = new ArrayDeque<>();
+  private int maxSize;
+  private int hitCount;
+  private int missCount;
+
+  PlayerPool(Context context, int maxSize, Looper looper, BufferBudget bufferBudget) {
+    this.context = context;
+    this.maxSize = maxSize;
+    this.looper = looper;
+    this.bufferBudget = bufferBudget;
+  }
+
+  /** Returns an idle pooled player if available, otherwise builds a new one. */
+  SimpleExoPlayer acquire() {
+    SimpleExoPlayer player = idlePlayers.pollFirst();
+    if (player != null) {
+      hitCount++;
+      return player;
+    }
+    missCount++;
+    return buildPlayer();
+  }
+
+  /** Adds a listener to a player built by this pool, to be removed when it is recycled. */
+  void addListener(SimpleExoPlayer player, Player.EventListener listener) {
+    List<Player.EventListener> playerListeners = listeners.get(player);
+    if (playerListeners == null) {
+      playerListeners = new ArrayList<>();
+      listeners.put(player, playerListeners);
+    }
+    playerListeners.add(listener);
+    player.addListener(listener);
+  }
+
+  /**
+   * Returns a player to the pool, or releases it if the pool is full.
+   *
+   * <p>Removes the listeners added through {@link #addListener}, stops playback, drops the current
+   * media source and restores repeat mode, volume and playback parameters to their defaults.
+   */
+  void recycle(SimpleExoPlayer player) {
+    removeListeners(player);
+    if (idlePlayers.size() >= maxSize) {
+      release(player);
+      return;
+    }
+    BufferBudget.PlayerLoadControl loadControl = loadControls.get(player);
+    loadControl.setPriority(false);
+    loadControl.setLowMemory(false);
+    try {
+      player.setPlayWhenReady(false);
+      player.stop(/* reset= */ true);
+      player.setRepeatMode(Player.REPEAT_MODE_OFF);
+      player.setVolume(1.0f);
+      player.setPlaybackParameters(PlaybackParameters.DEFAULT);
+    } catch (Exception e) {
+      Log.e(TAG, "Could not reset player; releasing it instead.", e);
+      release(player);
+      return;
+    }
+    idlePlayers.addFirst(player);
+  }
+
+  /** Builds players until {@code count} idle players are available, up to the pool size. */
+  void prewarm(int count) {
+    int target = Math.min(count, maxSize);
+    while (idlePlayers.size() < target) {
+      idlePlayers.addLast(buildPlayer());
+    }
+  }
+
+  /** Sets the maximum number of idle players, releasing any excess. */
+  void setMaxSize(int maxSize) {
+    this.maxSize = Math.max(0, maxSize);
+    while (idlePlayers.size() > this.maxSize) {
+      release(idlePlayers.pollLast());
+    }
+  }
+
+  /** Returns the load control of a player built by this pool. */
+  BufferBudget.PlayerLoadControl getLoadControl(SimpleExoPlayer player) {
+    return loadControls.get(player);
+  }
+
+  int getMaxSize() {
+    return maxSize;
+  }
+
+  /** Releases all idle players. */
+  void clear() {
+    for (SimpleExoPlayer player : idlePlayers) {
+      release(player);
+    }
+    idlePlayers.clear();
+  }
+
+  private SimpleExoPlayer buildPlayer() {
+    BufferBudget.PlayerLoadControl loadControl = bufferBudget.newLoadControl();
+    SimpleExoPlayer player =
+        new SimpleExoPlayer.Builder(context).setLooper(looper).setLoadControl(loadControl).build();
+    loadControls.put(player, loadControl);
+    return player;
+  }
+
+  private void removeListeners(SimpleExoPlayer player) {
+    List<Player.EventListener> playerListeners = listeners.remove(player);
+    if (playerListeners == null) {
+      return;
+    }
+    for (Player.EventListener listener : playerListeners) {
+      player.removeListener(listener);
+    }
+  }
+
+  private void release(SimpleExoPlayer player) {
+    removeListeners(player);
+    loadControls.remove(player);
+    player.release();
+  }
+
+  Map<String, Object> getStats() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("size", idlePlayers.size());
+    stats.put("maxSize", maxSize);
+    stats.put("hits", hitCount);
+    stats.put("misses", missCount);
+    stats.put("bufferBudgetBytes", bufferBudget.getBudgetBytes());
+    stats.put("allocatedBufferBytes", bufferBudget.getAllocatedBytes());
+    return stats;
+  }
+}
@@ -0,0 +1,82 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.content.Context;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.ConcatenatingMediaSource;
+import com.google.android.exoplayer2.source.MediaSource;
+import java.util.List;
+
+/**
+ * Wraps a single ExoPlayer which plays a queue of sources back to back, for use by
+ * AudiofileplayerPlugin.
+ *
+ * <p>All items share one player and one {@link ConcatenatingMediaSource}, so the next item is
+ * buffered while the current one plays and transitions are gapless. Items can be added, removed and
+ * moved while playing, without rebuilding the playlist. Each change of current item is reported to
+ * the plugin.
+ */
+class PlaylistManagedMediaPlayer extends ManagedMediaPlayer {
+  private final ConcatenatingMediaSource playlist;
+  private int currentIndex;
+
+  private final Player.EventListener transitionEventListener =
+      new Player.EventListener() {
+        @Override
+        public void onPositionDiscontinuity(int reason) {
+          reportTransitionIfNeeded();
+        }
+
+        @Override
+        public void onTimelineChanged(Timeline timeline, int reason) {
+          // Edits before the current item change its index without a discontinuity.
+          reportTransitionIfNeeded();
+        }
+      };
+
+  /** Create a PlaylistManagedMediaPlayer which plays {@code mediaSources} in order. */
+  public PlaylistManagedMediaPlayer(
+      String audioId,
+      List<MediaSource> mediaSources,
+      AudiofileplayerPlugin parentAudioPlugin,
+      boolean looping,
+      boolean playInBackground,
+      Context context,
+      LoadStrategy loadStrategy) {
+    super(
+        audioId,
+        parentAudioPlugin,
+        looping,
+        playInBackground,
+        context,
+        new ConcatenatingMediaSource(mediaSources.toArray(new MediaSource[0])),
+        loadStrategy);
+    this.playlist = (ConcatenatingMediaSource) mediaSource;
+    addPlayerListener(transitionEventListener);
+  }
+
+  /** Inserts {@code mediaSource} at {@code index}, or at the end if {@code index} is null. */
+  public void add(Integer index, MediaSource mediaSource) {
+    if (index == null) {
+      playlist.addMediaSource(mediaSource);
+    } else {
+      playlist.addMediaSource(index, mediaSource);
+    }
+  }
+
+  public void remove(int index) {
+    playlist.removeMediaSource(index);
+  }
+
+  public void move(int fromIndex, int toIndex) {
+    playlist.moveMediaSource(fromIndex, toIndex);
+  }
+
+  private void reportTransitionIfNeeded() {
+    int index = player.getCurrentWindowIndex();
+    if (index != currentIndex) {
+      currentIndex = index;
+      parentAudioPlugin.handlePlaylistTransition(audioId, index);
+    }
+  }
+}
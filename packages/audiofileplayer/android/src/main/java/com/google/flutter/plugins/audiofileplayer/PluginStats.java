@@ -0,0 +1,131 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counters and latency histograms for the plugin's hot paths, reported by {@link
+ * AudiofileplayerPlugin#getStats}.
+ *
+ * <p>Recorded from the main thread, the player thread and ExoPlayer callbacks alike, so all methods
+ * are synchronized; each record is a few field updates.
+ */
+class PluginStats {
+  /** Counts of latencies, in buckets bounded above by {@link #BUCKET_BOUNDS_MS}. */
+  static final class LatencyHistogram {
+    static final long[] BUCKET_BOUNDS_MS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000};
+
+    // One more than the bounds, for latencies above the last bound.
+    private final long[] bucketCounts = new long[BUCKET_BOUNDS_MS.length + 1];
+    private long count;
+    private long sumMs;
+    private long maxMs;
+
+    void record(long latencyMs) {
+      int bucket = 0;
+      while (bucket < BUCKET_BOUNDS_MS.length && latencyMs > BUCKET_BOUNDS_MS[bucket]) {
+        bucket++;
+      }
+      bucketCounts[bucket]++;
+      count++;
+      sumMs += latencyMs;
+      maxMs = Math.max(maxMs, latencyMs);
+    }
+
+    Map<String, Object> toMap() {
+      List<Long> bounds = new ArrayList<>();
+      for (long bound : BUCKET_BOUNDS_MS) {
+        bounds.add(bound);
+      }
+      List<Long> counts = new ArrayList<>();
+      for (long bucketCount : bucketCounts) {
+        counts.add(bucketCount);
+      }
+      Map<String, Object> map = new HashMap<>();
+      map.put("count", count);
+      map.put("sumMs", sumMs);
+      map.put("maxMs", maxMs);
+      map.put("bucketBoundsMs", bounds);
+      map.put("bucketCounts", counts);
+      return map;
+    }
+  }
+
+  /** Message count and payload bytes of one method or channel. */
+  private static final class MessageCounter {
+    long count;
+    long bytes;
+  }
+
+  // From preparing a player, at load or on first play, until it is ready.
+  private final LatencyHistogram loadToReady = new LatencyHistogram();
+  // From a play call until the player is playing.
+  private final LatencyHistogram playToFirstAudio = new LatencyHistogram();
+  private long rebufferCount;
+  private long rebufferTotalMs;
+  private long droppedPositionTicks;
+  // Keyed by method name, or by channel name for messages which are not method calls.
+  private final Map<String, MessageCounter> incomingMessages = new HashMap<>();
+  private final Map<String, MessageCounter> outgoingMessages = new HashMap<>();
+
+  synchronized void recordLoadToReady(long latencyMs) {
+    loadToReady.record(latencyMs);
+  }
+
+  synchronized void recordPlayToFirstAudio(long latencyMs) {
+    playToFirstAudio.record(latencyMs);
+  }
+
+  synchronized void recordRebuffer(long durationMs) {
+    rebufferCount++;
+    rebufferTotalMs += durationMs;
+  }
+
+  synchronized void recordDroppedPositionTicks(long count) {
+    droppedPositionTicks += count;
+  }
+
+  synchronized void recordIncomingMessage(String key, int bytes) {
+    record(incomingMessages, key, bytes);
+  }
+
+  synchronized void recordOutgoingMessage(String key, int bytes) {
+    record(outgoingMessages, key, bytes);
+  }
+
+  /** Returns the recorded stats; the plugin adds its live player and memory figures. */
+  synchronized Map<String, Object> toMap() {
+    Map<String, Object> map = new HashMap<>();
+    map.put("loadToReadyMs", loadToReady.toMap());
+    map.put("playToFirstAudioMs", playToFirstAudio.toMap());
+    map.put("rebufferCount", rebufferCount);
+    map.put("rebufferTotalMs", rebufferTotalMs);
+    map.put("droppedPositionTicks", droppedPositionTicks);
+    map.put("incomingMessages", toMap(incomingMessages));
+    map.put("outgoingMessages", toMap(outgoingMessages));
+    return map;
+  }
+
+  private static void record(Map<String, MessageCounter> counters, String key, int bytes) {
+    MessageCounter counter = counters.get(key);
+    if (counter == null) {
+      counter = new MessageCounter();
+      counters.put(key, counter);
+    }
+    counter.count++;
+    counter.bytes += bytes;
+  }
+
+  private static Map<String, Object> toMap(Map<String, MessageCounter> counters) {
+    Map<String, Object> map = new HashMap<>();
+    for (Map.Entry<String, MessageCounter> entry : counters.entrySet()) {
+      Map<String, Object> counter = new HashMap<>();
+      counter.put("count", entry.getValue().count);
+      counter.put("bytes", entry.getValue().bytes);
+      map.put(entry.getKey(), counter);
+    }
+    return map;
+  }
+}
@@ -0,0 +1,111 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single scheduler which reports the position of every playing {@link ManagedMediaPlayer}.
+ *
+ * <p>Players are added when they start playing and removed when they stop, so the handler is idle
+ * (and does not wake its looper) while nothing is playing. Each player is reported at its own
+ * interval if it has one, otherwise at the ticker's default interval. All players due on a tick
+ * are handed to the plugin together, so that their positions can be sent in a single message.
+ */
+class PositionTicker implements Runnable {
+  static final long DEFAULT_INTERVAL_MS = 250;
+
+  private final Handler handler;
+  private final AudiofileplayerPlugin parentAudioPlugin;
+  // Reused on each tick to collect the players due a position report.
+  private final List<ManagedMediaPlayer> duePlayers = new ArrayList<>();
+  // Uptime (in ms) of the last position report for each playing player.
+  private final Map<ManagedMediaPlayer, Long> lastReportTimes = new LinkedHashMap<>();
+  private long defaultIntervalMs = DEFAULT_INTERVAL_MS;
+  private long scheduledTimeMs = -1;
+
+  PositionTicker(Handler handler, AudiofileplayerPlugin parentAudioPlugin) {
+    this.handler = handler;
+    this.parentAudioPlugin = parentAudioPlugin;
+  }
+
+  /** Starts reporting the position of {@code player}, beginning immediately. */
+  void start(ManagedMediaPlayer player) {
+    lastReportTimes.put(player, Long.MIN_VALUE / 2);
+    reschedule();
+  }
+
+  /** Stops reporting the position of {@code player}. */
+  void stop(ManagedMediaPlayer player) {
+    if (lastReportTimes.remove(player) != null) {
+      reschedule();
+    }
+  }
+
+  /** Sets the interval for players without their own; pass 0 to restore the default. */
+  void setDefaultIntervalMs(long intervalMs) {
+    defaultIntervalMs = intervalMs > 0 ? intervalMs : DEFAULT_INTERVAL_MS;
+    reschedule();
+  }
+
+  long getDefaultIntervalMs() {
+    return defaultIntervalMs;
+  }
+
+  /** Re-evaluates the next tick time, e.g. after a player's interval has changed. */
+  void reschedule() {
+    long nextTimeMs = Long.MAX_VALUE;
+    for (Map.Entry<ManagedMediaPlayer, Long> entry : lastReportTimes.entrySet()) {
+      nextTimeMs = Math.min(nextTimeMs, entry.getValue() + intervalMsFor(entry.getKey()));
+    }
+    scheduleAt(nextTimeMs);
+  }
+
+  @Override
+  public void run() {
+    scheduledTimeMs = -1;
+    long nowMs = SystemClock.uptimeMillis();
+    long droppedTicks = 0;
+    for (Map.Entry<ManagedMediaPlayer, Long> entry : lastReportTimes.entrySet()) {
+      long intervalMs = intervalMsFor(entry.getKey());
+      long dueTimeMs = entry.getValue() + intervalMs;
+      if (dueTimeMs <= nowMs) {
+        duePlayers.add(entry.getKey());
+        // Reports due since, but missed because the looper was busy; not on the first report.
+        if (entry.getValue() >= 0) {
+          droppedTicks += (nowMs - dueTimeMs) / intervalMs;
+        }
+        entry.setValue(nowMs);
+      }
+    }
+    if (droppedTicks > 0) {
+      parentAudioPlugin.getPluginStats().recordDroppedPositionTicks(droppedTicks);
+    }
+    if (!duePlayers.isEmpty()) {
+      parentAudioPlugin.handlePositions(duePlayers);
+      duePlayers.clear();
+    }
+    reschedule();
+  }
+
+  private long intervalMsFor(ManagedMediaPlayer player) {
+    long intervalMs = player.getPositionUpdateIntervalMs();
+    return intervalMs > 0 ? intervalMs : defaultIntervalMs;
+  }
+
+  private void scheduleAt(long timeMs) {
+    if (timeMs == scheduledTimeMs) {
+      return;
+    }
+    handler.removeCallbacks(this);
+    scheduledTimeMs = -1;
+    if (timeMs == Long.MAX_VALUE) {
+      return;
+    }
+    scheduledTimeMs = timeMs;
+    handler.postAtTime(this, timeMs);
+  }
+}
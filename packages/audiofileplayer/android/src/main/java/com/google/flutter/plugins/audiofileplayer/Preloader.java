@@ -0,0 +1,78 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.source.MediaSource;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds silently prepared players for sources which are expected to be loaded soon.
+ *
+ * <p>Preloading acquires a player from the {@link PlayerPool} and prepares it without starting
+ * playback; ExoPlayer then extracts and buffers the source on its own playback thread. A later load
+ * of the same source takes over the prepared player, so its first play starts from buffered data.
+ * At most {@link #MAX_PRELOADED_PLAYERS} players are held; the least recently preloaded is dropped
+ * first.
+ */
+class Preloader {
+  static final int MAX_PRELOADED_PLAYERS = 4;
+
+  /** A prepared player, and the media source it was prepared with. */
+  static final class PreloadedPlayer {
+    final SimpleExoPlayer player;
+    final MediaSource mediaSource;
+
+    PreloadedPlayer(SimpleExoPlayer player, MediaSource mediaSource) {
+      this.player = player;
+      this.mediaSource = mediaSource;
+    }
+  }
+
+  private final PlayerPool playerPool;
+  // Keyed by source key, in order of preloading.
+  private final LinkedHashMap<String, PreloadedPlayer> preloadedPlayers = new LinkedHashMap<>();
+
+  Preloader(PlayerPool playerPool) {
+    this.playerPool = playerPool;
+  }
+
+  boolean isPreloaded(String sourceKey) {
+    return preloadedPlayers.containsKey(sourceKey);
+  }
+
+  /** Starts preparing {@code mediaSource}, unless {@code sourceKey} is already preloaded. */
+  void preload(String sourceKey, MediaSource mediaSource) {
+    if (preloadedPlayers.containsKey(sourceKey)) {
+      return;
+    }
+    SimpleExoPlayer player = playerPool.acquire();
+    player.setPlayWhenReady(false);
+    boolean traced = Tracing.begin(Tracing.PREPARE);
+    try {
+      player.prepare(mediaSource);
+    } finally {
+      Tracing.end(traced);
+    }
+    preloadedPlayers.put(sourceKey, new PreloadedPlayer(player, mediaSource));
+
+    Iterator<Map.Entry<String, PreloadedPlayer>> iterator = preloadedPlayers.entrySet().iterator();
+    while (preloadedPlayers.size() > MAX_PRELOADED_PLAYERS) {
+      playerPool.recycle(iterator.next().getValue().player);
+      iterator.remove();
+    }
+  }
+
+  /** Removes and returns the preloaded player for {@code sourceKey}, or null if there is none. */
+  PreloadedPlayer take(String sourceKey) {
+    return preloadedPlayers.remove(sourceKey);
+  }
+
+  /** Returns all preloaded players to the pool. */
+  void clear() {
+    for (PreloadedPlayer preloadedPlayer : preloadedPlayers.values()) {
+      playerPool.recycle(preloadedPlayer.player);
+    }
+    preloadedPlayers.clear();
+  }
+}
@@ -0,0 +1,137 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Persistent on-disk cache of remote audio, shared by all {@link RemoteManagedMediaPlayer}s.
+ *
+ * <p>Lives in the app's cache directory and evicts least-recently-used content once its byte
+ * budget is exceeded. Only one {@link SimpleCache} may use a directory at a time, so the shared
+ * cache ({@link #get}) is created once per process and never released. Other instances, each in a
+ * directory of its own, can be constructed directly, e.g. by tests.
+ *
+ * <p>Network reads go through a {@link KeepAliveHttpDataSource}, so loads and seeks of the same
+ * host reuse pooled connections. Ranges can also be prefetched into the cache in the background.
+ */
+final class RemoteAudioCache {
+  private static final String TAG = RemoteAudioCache.class.getSimpleName();
+  static final long DEFAULT_MAX_BYTES = 100 * 1024 * 1024;
+  static final String USER_AGENT = "audiofileplayer";
+  private static final String CACHE_DIRECTORY = "audiofileplayer_remote";
+  private static final int PREFETCH_BUFFER_SIZE = 16 * 1024;
+
+  private static RemoteAudioCache sharedCache;
+  private static ExecutorService prefetchExecutor;
+  private static long sharedMaxBytes = DEFAULT_MAX_BYTES;
+
+  private final SimpleCache cache;
+
+  /**
+   * Creates a cache in {@code directory}, which no other cache of the process may use until this
+   * one is {@link #release released}.
+   */
+  RemoteAudioCache(Context context, File directory, long maxBytes) {
+    cache =
+        new SimpleCache(
+            directory,
+            new LeastRecentlyUsedCacheEvictor(maxBytes),
+            new ExoDatabaseProvider(context.getApplicationContext()));
+  }
+
+  /**
+   * Sets the byte budget of the shared cache.
+   *
+   * @return false if the shared cache has already been created with a different budget, in which
+   *     case the budget is unchanged.
+   */
+  static synchronized boolean setMaxBytes(long maxBytes) {
+    if (sharedCache != null) {
+      return maxBytes == sharedMaxBytes;
+    }
+    sharedMaxBytes = maxBytes;
+    return true;
+  }
+
+  /** Returns the shared cache, creating it in the app's cache directory on first use. */
+  static synchronized RemoteAudioCache get(Context context) {
+    if (sharedCache == null) {
+      sharedCache =
+          new RemoteAudioCache(
+              context,
+              new File(context.getApplicationContext().getCacheDir(), CACHE_DIRECTORY),
+              sharedMaxBytes);
+    }
+    return sharedCache;
+  }
+
+  Cache getCache() {
+    return cache;
+  }
+
+  /**
+   * Returns a factory for data sources which read through the cache, fetching from the network only
+   * the ranges not already cached.
+   */
+  DataSource.Factory dataSourceFactory() {
+    return new CacheDataSourceFactory(
+        cache,
+        new KeepAliveHttpDataSource.Factory(USER_AGENT),
+        CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR);
+  }
+
+  /**
+   * Fetches {@code length} bytes of {@code url}, starting at {@code position}, into the cache on a
+   * background thread. Already-cached ranges are not fetched again.
+   *
+   * @return a future which completes once the prefetch has finished or failed.
+   */
+  Future<?> prefetch(String url, long position, long length) {
+    DataSource dataSource = dataSourceFactory().createDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse(url), position, length, /* key= */ null);
+    return getPrefetchExecutor()
+        .submit(
+            () -> {
+              byte[] buffer = new byte[PREFETCH_BUFFER_SIZE];
+              try {
+                dataSource.open(dataSpec);
+                while (dataSource.read(buffer, 0, buffer.length) != C.RESULT_END_OF_INPUT) {}
+              } catch (IOException e) {
+                Log.w(TAG, "Could not prefetch " + url, e);
+              } finally {
+                try {
+                  dataSource.close();
+                } catch (IOException e) {
+                  Log.w(TAG, "Could not close prefetch of " + url, e);
+                }
+              }
+            });
+  }
+
+  /** Releases a cache constructed directly, freeing its directory. Not for the shared cache. */
+  void release() {
+    cache.release();
+  }
+
+  private static synchronized ExecutorService getPrefetchExecutor() {
+    if (prefetchExecutor == null) {
+      prefetchExecutor = Executors.newSingleThreadExecutor();
+    }
+    return prefetchExecutor;
+  }
+}
@@ -1,119 +1,144 @@
 package com.google.flutter.plugins.audiofileplayer;
 
-import android.media.MediaPlayer;
+import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.source.MediaSource;
 
 /**
- * Wraps a MediaPlayer for remote asset use by AudiofileplayerPlugin.
+ * Wraps an ExoPlayer for remote asset use by AudiofileplayerPlugin.
  *
  * <p>Used for remote audio data only; loading occurs asynchronously, allowing program to continue
  * while data is received. Callers may call all other methods on {@link ManagedMediaPlayer}
- * immediately (i.e. before loading is complete); these will, if necessary, be delayed and re-called
- * internally upon loading completion.
+ * immediately (i.e. before loading is complete).
+ *
+ * <p>Audio is read through the shared {@link RemoteAudioCache}, so repeat plays of the same URL are
+ * served from disk.
  *
  * <p>Note that with async loading, errors such as invalid URLs and lack of connectivity are
- * reported asyncly via {@link RemoteManagedMediaPlayer.onError()}, instead of as Exceptions.
- * Unfortunately, this yields inscrutable and/or undifferentiated error codes, instead of discrete
- * Exception subclasses with human-readable error messages.
+ * reported asyncly via {@link OnRemoteLoadListener}, instead of as Exceptions.
  */
-//class RemoteManagedMediaPlayer extends ManagedMediaPlayer
-//    implements MediaPlayer.OnPreparedListener {
-//
-//  interface OnRemoteLoadListener {
-//    /**
-//     * Called when asynchronous remote loading has completed, either successfully via {@link
-//     * RemoteManagedMediaPlayer#onPrepare()}, or unsuccessfully on {@link
-//     * RemoteManagedMediaPlayer#onError()}.
-//     */
-//    void onRemoteLoadComplete(boolean success);
-//  }
-//
-//  private static final String TAG = RemoteManagedMediaPlayer.class.getSimpleName();
-//  private OnRemoteLoadListener onRemoteLoadListener;
-//  private boolean isPrepared;
-//  // A list of runnables to run once onPrepared() is called.
-//  private List<Runnable> onPreparedRunnables = new ArrayList<>();
-//
-//  /**
-//   * Create a RemoteManagedMediaPlayer from an remote URL string.
-//   *
-//   * <p>Async loading errors (during {@link MediaPlayer#prepareAsync()}) are caught by {@link
-//   * RemoteManagedMediaPlayer#onError()}, not as Exceptions.
-//   *
-//   * @throws IOException if underlying MediaPlayer cannot load it as its DataSource.
-//   */
-//  public RemoteManagedMediaPlayer(
-//      String audioId,
-//      String remoteUrl,
-//      AudiofileplayerPlugin parentAudioPlugin,
-//      boolean looping,
-//      boolean playInBackground)
-//      throws IOException {
-//    super(audioId, parentAudioPlugin, looping, playInBackground);
-//    player.setDataSource(remoteUrl);
-//    player.setOnCompletionListener(this);
-//    player.setOnPreparedListener(this);
-//    player.setOnErrorListener(this);
-//    player.setOnSeekCompleteListener(this);
-//    player.prepareAsync();
-//  }
-//
-//  public void setOnRemoteLoadListener(OnRemoteLoadListener onRemoteLoadListener) {
-//    this.onRemoteLoadListener = onRemoteLoadListener;
-//  }
-//
-//  @Override
-//  public void onPrepared(MediaPlayer mediaPlayer) {
-//    Log.i(TAG, "on prepared");
-//    isPrepared = true;
-//    onRemoteLoadListener.onRemoteLoadComplete(true);
-//    for (Runnable r : onPreparedRunnables) {
-//      r.run();
-//    }
-//  }
-//
-//  @Override
-//  public void play(boolean playFromStart, int endpointMs) {
-//    if (!isPrepared) {
-//      onPreparedRunnables.add(() -> RemoteManagedMediaPlayer.super.play(playFromStart, endpointMs));
-//    } else {
-//      super.play(playFromStart, endpointMs);
-//    }
-//  }
-//
-//  @Override
-//  public void release() {
-//    if (!isPrepared) {
-//      onPreparedRunnables.add(() -> RemoteManagedMediaPlayer.super.release());
-//    } else {
-//      super.release();
-//    }
-//  }
-//
-//  @Override
-//  public void seek(double positionSeconds) {
-//    if (!isPrepared) {
-//      onPreparedRunnables.add(() -> RemoteManagedMediaPlayer.super.seek(positionSeconds));
-//    } else {
-//      super.seek(positionSeconds);
-//    }
-//  }
-//
-//  @Override
-//  public void pause() {
-//    if (!isPrepared) {
-//      onPreparedRunnables.add(() -> RemoteManagedMediaPlayer.super.pause());
-//    } else {
-//      super.pause();
-//    }
-//  }
-//
-//  @Override
-//  public boolean onError(MediaPlayer mp, int what, int extra) {
-//    onRemoteLoadListener.onRemoteLoadComplete(false);
-//    return super.onError(mp, what, extra);
-//  }
-//}
+class RemoteManagedMediaPlayer extends ManagedMediaPlayer {
+
+  interface OnRemoteLoadListener {
+    /**
+     * Called when asynchronous remote loading has completed, either successfully once the player is
+     * ready, or unsuccessfully on a player error.
+     */
+    void onRemoteLoadComplete(boolean success);
+  }
+
+  private static final String TAG = RemoteManagedMediaPlayer.class.getSimpleName();
+  private OnRemoteLoadListener onRemoteLoadListener;
+  private boolean loadReported;
+  // Outcome of a load which completed before a listener was set, e.g. of a preloaded player.
+  @Nullable private Boolean unreportedLoadSuccess;
+  private final long loadStartTimeMs = SystemClock.elapsedRealtime();
+
+  private final Player.EventListener loadEventListener =
+      new Player.EventListener() {
+        @Override
+        public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
+          if (playbackState == Player.STATE_READY) {
+            reportLoad(true);
+          }
+        }
+
+        @Override
+        public void onPlayerError(ExoPlaybackException error) {
+          Log.e(TAG, "onPlayerError for remote audio: " + audioId, error);
+          reportLoad(false);
+        }
+      };
+
+  /**
+   * Create a RemoteManagedMediaPlayer from a media source for a remote URL, reading through the
+   * {@link RemoteAudioCache}.
+   *
+   * <p>Preparation starts immediately; its outcome is reported to the {@link
+   * OnRemoteLoadListener}.
+   */
+  public RemoteManagedMediaPlayer(
+      String audioId,
+      MediaSource mediaSource,
+      AudiofileplayerPlugin parentAudioPlugin,
+      boolean looping,
+      boolean playInBackground,
+      Context context) {
+    super(
+        audioId,
+        parentAudioPlugin,
+        looping,
+        playInBackground,
+        context,
+        mediaSource,
+        LoadStrategy.DEFAULT);
+    addPlayerListener(loadEventListener);
+    prepareIfIdle();
+  }
+
+  /**
+   * Create a RemoteManagedMediaPlayer taking over a player prepared by the {@link Preloader}. If it
+   * is ready already, the load is reported as soon as an {@link OnRemoteLoadListener} is set.
+   */
+  public RemoteManagedMediaPlayer(
+      String audioId,
+      Preloader.PreloadedPlayer preloadedPlayer,
+      AudiofileplayerPlugin parentAudioPlugin,
+      boolean looping,
+      boolean playInBackground,
+      Context context) {
+    super(
+        audioId,
+        parentAudioPlugin,
+        looping,
+        playInBackground,
+        context,
+        preloadedPlayer.mediaSource,
+        preloadedPlayer.player,
+        LoadStrategy.DEFAULT);
+    addPlayerListener(loadEventListener);
+    // Prepares again if the preload failed.
+    prepareIfIdle();
+    if (player.getPlaybackState() == Player.STATE_READY) {
+      reportLoad(true);
+    }
+  }
+
+  /** Not evictable until the initial load has been reported. */
+  @Override
+  boolean isEvictable() {
+    return loadReported && super.isEvictable();
+  }
+
+  public void setOnRemoteLoadListener(OnRemoteLoadListener onRemoteLoadListener) {
+    this.onRemoteLoadListener = onRemoteLoadListener;
+    if (unreportedLoadSuccess != null) {
+      boolean success = unreportedLoadSuccess;
+      unreportedLoadSuccess = null;
+      onRemoteLoadListener.onRemoteLoadComplete(success);
+    }
+  }
+
+  private void reportLoad(boolean success) {
+    if (loadReported) {
+      return;
+    }
+    loadReported = true;
+    Log.i(
+        TAG,
+        String.format(
+            "Remote load of %s %s after %d ms.",
+            audioId,
+            success ? "ready" : "failed",
+            SystemClock.elapsedRealtime() - loadStartTimeMs));
+    if (onRemoteLoadListener != null) {
+      onRemoteLoadListener.onRemoteLoadComplete(success);
+    } else {
+      unreportedLoadSuccess = success;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import androidx.annotation.Nullable;
+import io.flutter.plugin.common.BinaryMessenger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Forwards to another {@link BinaryMessenger}, recording the count and payload size of each
+ * message in {@link PluginStats} once enabled.
+ *
+ * <p>Disabled until stats are first requested, so that apps which never read them only pay a
+ * volatile read per message, rather than a synchronized update and a method name read.
+ *
+ * <p>Messages on the method channel are keyed by method name, read from the start of the encoded
+ * call without decoding the arguments; messages on other channels are keyed by channel name.
+ */
+class StatsBinaryMessenger implements BinaryMessenger {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  // StandardMessageCodec's type byte for a string, and its marker for a 2-byte size.
+  private static final byte STRING_TYPE = 7;
+  private static final int TWO_BYTE_SIZE = 254;
+
+  private final BinaryMessenger delegate;
+  private final String methodChannelName;
+  private final PluginStats stats;
+  private volatile boolean enabled;
+
+  StatsBinaryMessenger(BinaryMessenger delegate, String methodChannelName, PluginStats stats) {
+    this.delegate = delegate;
+    this.methodChannelName = methodChannelName;
+    this.stats = stats;
+  }
+
+  /** Starts or stops recording messages; counts recorded so far are kept. */
+  void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @Override
+  public void send(String channel, @Nullable ByteBuffer message) {
+    send(channel, message, null);
+  }
+
+  @Override
+  public void send(String channel, @Nullable ByteBuffer message, @Nullable BinaryReply callback) {
+    // Outgoing messages are sent up to their position.
+    if (enabled && message != null) {
+      stats.recordOutgoingMessage(keyFor(channel, message), message.position());
+    }
+    delegate.send(channel, message, callback);
+  }
+
+  @Override
+  public void setMessageHandler(String channel, @Nullable BinaryMessageHandler handler) {
+    if (handler == null) {
+      delegate.setMessageHandler(channel, null);
+      return;
+    }
+    delegate.setMessageHandler(
+        channel,
+        (message, reply) -> {
+          // Incoming messages are read from their position to their limit.
+          if (enabled && message != null) {
+            stats.recordIncomingMessage(keyFor(channel, message), message.remaining());
+          }
+          handler.onMessage(message, reply);
+        });
+  }
+
+  private String keyFor(String channel, ByteBuffer message) {
+    if (!channel.equals(methodChannelName)) {
+      return channel;
+    }
+    String method = readMethodName(message);
+    return method != null ? method : channel;
+  }
+
+  /**
+   * Reads the method name which starts a call encoded by the standard method codec, or returns
+   * null if there is none. Uses absolute reads, since the message's position differs between
+   * incoming and outgoing messages.
+   */
+  @Nullable
+  private static String readMethodName(ByteBuffer message) {
+    int capacity = message.capacity();
+    if (capacity < 2 || message.get(0) != STRING_TYPE) {
+      return null;
+    }
+    int size = message.get(1) & 0xff;
+    int start = 2;
+    if (size == TWO_BYTE_SIZE) {
+      if (capacity < 4) {
+        return null;
+      }
+      size = (message.get(2) & 0xff) | (message.get(3) & 0xff) << 8;
+      start = 4;
+    } else if (size > TWO_BYTE_SIZE) {
+      // Longer than any method name.
+      return null;
+    }
+    if (capacity < start + size) {
+      return null;
+    }
+    byte[] name = new byte[size];
+    for (int i = 0; i < size; i++) {
+      name[i] = message.get(start + i);
+    }
+    return new String(name, UTF_8);
+  }
+}
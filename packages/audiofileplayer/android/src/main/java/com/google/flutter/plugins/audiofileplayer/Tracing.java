@@ -0,0 +1,59 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Named sections around the plugin's hot paths, shown in system traces (e.g. Perfetto) once
+ * enabled at runtime.
+ *
+ * <p>Usage, where the section is only ended if it was begun, so that toggling tracing mid-section
+ * cannot unbalance the trace:
+ *
+ * <pre>
+ *   boolean traced = Tracing.begin(Tracing.SEEK);
+ *   try {
+ *     ...
+ *   } finally {
+ *     Tracing.end(traced);
+ *   }
+ * </pre>
+ *
+ * <p>While disabled, each call is a single volatile read; section names are constants, so nothing
+ * is allocated. Sections need API 18, and are skipped below it.
+ */
+final class Tracing {
+  static final String ON_LOAD = "audiofileplayer:onLoad";
+  static final String BUILD_MEDIA_SOURCE = "audiofileplayer:buildMediaSource";
+  static final String PREPARE = "audiofileplayer:prepare";
+  static final String SEEK = "audiofileplayer:seek";
+  static final String MAP_TO_METADATA = "audiofileplayer:mapToMetadata";
+  static final String BUILD_NOTIFICATION = "audiofileplayer:buildNotification";
+
+  private static volatile boolean enabled;
+
+  private Tracing() {}
+
+  static void setEnabled(boolean enabled) {
+    Tracing.enabled = enabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+  }
+
+  /** Begins a section on the current thread if tracing is enabled, and returns whether it did. */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  static boolean begin(String sectionName) {
+    if (!enabled) {
+      return false;
+    }
+    Trace.beginSection(sectionName);
+    return true;
+  }
+
+  /** Ends the current thread's section, if {@code traced} (the result of {@link #begin}). */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+  static void end(boolean traced) {
+    if (traced) {
+      Trace.endSection();
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import static org.junit.Assert.assertTrue;
+
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.StandardMethodCodec;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.Test;
+
+/**
+ * Compares {@link BinaryEventCodec} with the maps sent through {@code invokeMethod}, encoded by
+ * {@link StandardMethodCodec}, for the high-frequency position events.
+ *
+ * <p>Asserts only on message sizes; encoding times are printed, since they vary with the machine.
+ */
+public class BinaryEventCodecBenchmark {
+  private static final int PLAYER_COUNT = 8;
+  private static final int WARMUP_ITERATIONS = 20000;
+  private static final int ITERATIONS = 200000;
+
+  private final List<String> audioIds = new ArrayList<>();
+
+  public BinaryEventCodecBenchmark() {
+    for (int i = 0; i < PLAYER_COUNT; i++) {
+      audioIds.add(UUID.randomUUID().toString());
+    }
+  }
+
+  @Test
+  public void position_binaryIsSmallerAndPrintsTimes() {
+    BinaryEventCodec binaryCodec = new BinaryEventCodec();
+    // Interns the id, as the first message after loading does.
+    binaryCodec.encodePosition(audioIds.get(0), 0);
+
+    int binaryBytes = binaryCodec.encodePosition(audioIds.get(0), 1.5).position();
+    int standardBytes = encodeStandardPosition(audioIds.get(0), 1.5).position();
+    assertTrue(binaryBytes + " >= " + standardBytes, binaryBytes < standardBytes);
+
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      binaryCodec.encodePosition(audioIds.get(0), i);
+      encodeStandardPosition(audioIds.get(0), i);
+    }
+    long startNs = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      binaryCodec.encodePosition(audioIds.get(0), i);
+    }
+    long binaryNs = System.nanoTime() - startNs;
+    startNs = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      encodeStandardPosition(audioIds.get(0), i);
+    }
+    long standardNs = System.nanoTime() - startNs;
+    report("onPosition", binaryBytes, binaryNs, standardBytes, standardNs);
+  }
+
+  @Test
+  public void positions_binaryIsSmallerAndPrintsTimes() {
+    BinaryEventCodec binaryCodec = new BinaryEventCodec();
+    double[] positionsSeconds = new double[PLAYER_COUNT];
+    binaryCodec.encodePositions(audioIds, positionsSeconds);
+
+    int binaryBytes = binaryCodec.encodePositions(audioIds, positionsSeconds).position();
+    int standardBytes = encodeStandardPositions(audioIds, positionsSeconds).position();
+    assertTrue(binaryBytes + " >= " + standardBytes, binaryBytes < standardBytes);
+
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      binaryCodec.encodePositions(audioIds, positionsSeconds);
+      encodeStandardPositions(audioIds, positionsSeconds);
+    }
+    long startNs = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      binaryCodec.encodePositions(audioIds, positionsSeconds);
+    }
+    long binaryNs = System.nanoTime() - startNs;
+    startNs = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      encodeStandardPositions(audioIds, positionsSeconds);
+    }
+    long standardNs = System.nanoTime() - startNs;
+    report("onPositions x" + PLAYER_COUNT, binaryBytes, binaryNs, standardBytes, standardNs);
+  }
+
+  private static ByteBuffer encodeStandardPosition(String audioId, double positionSeconds) {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("audioId", audioId);
+    arguments.put("position_seconds", positionSeconds);
+    return StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall("onPosition", arguments));
+  }
+
+  private static ByteBuffer encodeStandardPositions(
+      List<String> audioIds, double[] positionsSeconds) {
+    Map<String, Object> arguments = new HashMap<>();
+    arguments.put("audioIds", audioIds);
+    arguments.put("positions_seconds", positionsSeconds);
+    return StandardMethodCodec.INSTANCE.encodeMethodCall(new MethodCall("onPositions", arguments));
+  }
+
+  private static void report(
+      String event, int binaryBytes, long binaryNs, int standardBytes, long standardNs) {
+    System.out.println(
+        String.format(
+            "%s: binary %d bytes, %d ns/message; standard %d bytes, %d ns/message",
+            event, binaryBytes, binaryNs / ITERATIONS, standardBytes, standardNs / ITERATIONS));
+  }
+}
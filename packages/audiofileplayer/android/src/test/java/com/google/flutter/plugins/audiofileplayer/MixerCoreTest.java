@@ -0,0 +1,154 @@
+package com.google.flutter.plugins.audiofileplayer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class MixerCoreTest {
+  private static final int MAX_VOICES = 4;
+
+  @Test
+  public void render_mixesPlayingSources() {
+    MixerCore mixer = new MixerCore(MAX_VOICES);
+    mixer.addSource("a", new short[] {100, 200, 300, 400}, false);
+    mixer.addSource("b", new short[] {10, 20, 30, 40}, false);
+    mixer.addSource("paused", new short[] {1000, 1000, 1000, 1000}, false);
+    mixer.play("a");
+    mixer.play("b");
+    mixer.setVolume("b", 0.5f);
+
+    short[] output = new short[4];
+    mixer.render(output, 2, new ArrayList<>());
+
+    assertArrayEquals(new short[] {105, 210, 315, 420}, output);
+  }
+
+  @Test
+  public void render_clipsSumToSixteenBits() {
+    MixerCore mixer = new MixerCore(MAX_VOICES);
+    mixer.addSource("a", new short[] {30000, -30000}, true);
+    mixer.addSource("b", new short[] {30000, -30000}, true);
+    mixer.play("a");
+    mixer.play("b");
+
+    short[] output = new short[2];
+    mixer.render(output, 1, new ArrayList<>());
+
+    assertArrayEquals(new short[] {Short.MAX_VALUE, Short.MIN_VALUE}, output);
+  }
+
+  @Test
+  public void clip_clampsToSixteenBits() {
+    assertEquals(Short.MAX_VALUE, MixerCore.clip(Short.MAX_VALUE + 1));
+    assertEquals(Short.MIN_VALUE, MixerCore.clip(Short.MIN_VALUE - 1));
+    assertEquals(123, MixerCore.clip(123));
+  }
+
+  @Test
+  public void render_loopingSourceWrapsAround() {
+    MixerCore mixer = new MixerCore(MAX_VOICES);
+    mixer.addSource("loop", new short[] {1, 1, 2, 2, 3, 3}, true);
+    mixer.play("loop");
+    List<String> completedIds = new ArrayList<>();
+
+    short[] output = new short[8];
+    mixer.render(output, 4, completedIds);
+
+    assertArrayEquals(new short[] {1, 1, 2, 2, 3, 3, 1, 1}, output);
+    assertEquals(1, mixer.getFrame("loop"));
+    assertTrue(mixer.isPlaying("loop"));
+    assertTrue(completedIds.isEmpty());
+
+    // Wraps around again, over several loops in one buffer.
+    output = new short[14];
+    mixer.render(output, 7, completedIds);
+    assertArrayEquals(new short[] {2, 2, 3, 3, 1, 1, 2, 2, 3, 3, 1, 1, 2, 2}, output);
+    assertEquals(2, mixer.getFrame("loop"));
+  }
+
+  @Test
+  public void render_nonLoopingSourceCompletesAndRewinds() {
+    MixerCore mixer = new MixerCore(MAX_VOICES);
+    mixer.addSource("once", new short[] {1, 1, 2, 2}, false);
+    mixer.play("once");
+    List<String> completedIds = new ArrayList<>();
+
+    short[] output = new short[8];
+    mixer.render(output, 4, completedIds);
+
+    assertArrayEquals(new short[] {1, 1, 2, 2, 0, 0, 0, 0}, output);
+    assertEquals(Collections.singletonList("once"), completedIds);
+    assertFalse(mixer.isPlaying("once"));
+    assertEquals(0, mixer.getFrame("once"));
+    assertFalse(mixer.isActive());
+  }
+
+  @Test
+  public void render_voicesPlayOnceAlongsideEachOther() {
+    MixerCore mixer = new MixerCore(MAX_VOICES);
+    mixer.addSource("effect", new short[] {1, 1, 2, 2}, false);
+    mixer.trigger("effect");
+
+    short[] output = new short[2];
+    mixer.render(output, 1, new ArrayList<>());
+    mixer.trigger("effect");
+    mixer.render(output, 1, new ArrayList<>());
+
+    // The second frame of the first voice, plus the first frame of the second.
+    assertArrayEquals(new short[] {3, 3}, output);
+    mixer.render(output, 1, new ArrayList<>());
+    assertArrayEquals(new short[] {2, 2}, output);
+    assertFalse(mixer.isActive());
+  }
+
+  @Test
+  public void resampleToStereo_duplicatesMonoAtSameRate() {
+    short[] output = MixerCore.resampleToStereo(new short[] {1, 2, 3}, 3, 1, 44100, 44100);
+
+    assertArrayEquals(new short[] {1, 1, 2, 2, 3, 3}, output);
+  }
+
+  @Test
+  public void resampleToStereo_interpolatesWhenUpsampling() {
+    short[] input = {0, 100, 100, 200};
+
+    short[] output = MixerCore.resampleToStereo(input, input.length, 2, 22050, 44100);
+
+    // Two input frames become four output frames, halfway points interpolated; the last frame is
+    // held, as there is nothing after it.
+    assertArrayEquals(new short[] {0, 100, 50, 150, 100, 200, 100, 200}, output);
+  }
+
+  @Test
+  public void resampleToStereo_dropsFramesWhenDownsampling() {
+    short[] input = {0, 0, 10, 10, 20, 20, 30, 30};
+
+    short[] output = MixerCore.resampleToStereo(input, input.length, 2, 48000, 24000);
+
+    assertArrayEquals(new short[] {0, 0, 20, 20}, output);
+  }
+
+  @Test
+  public void resampleToStereo_keepsFirstTwoOfManyChannels() {
+    short[] input = {1, 2, 3, 4, 5, 6};
+
+    short[] output = MixerCore.resampleToStereo(input, input.length, 3, 8000, 8000);
+
+    assertArrayEquals(new short[] {1, 2, 4, 5}, output);
+  }
+
+  @Test
+  public void resampleToStereo_readsOnlyValidSamples() {
+    short[] input = {7, 7, 9, 9};
+
+    short[] output = MixerCore.resampleToStereo(input, 2, 2, 8000, 8000);
+
+    assertArrayEquals(new short[] {7, 7}, output);
+  }
+}
@@ -37,6 +37,9 @@ const String metadataArtistKey = 'metadataArtist';
 const String metadataGenreKey = 'metadataGenre';
 const String metadataDurationSecondsKey = 'metadataDurationSeconds';
 const String metadataArtBytesKey = 'metadataArtBytes';
+const String metadataArtFilePathKey = 'metadataArtFilePath';
+const String metadataArtFlutterPathKey = 'metadataArtFlutterPath';
+const String metadataArtUriKey = 'metadataArtUri';
 
 /// Represents audio playback category on iOS.
 ///
@@ -109,6 +112,9 @@ class AudioMetadata {
     this.genre,
     this.durationSeconds,
     this.artBytes,
+    this.artFilePath,
+    this.artFlutterPath,
+    this.artUri,
   });
   final String id;
   final String title;
@@ -117,6 +123,12 @@ class AudioMetadata {
   final String genre;
   final double durationSeconds;
   final Uint8List artBytes;
+
+  /// Artwork given by reference, loaded and cached by the native side instead
+  /// of being sent as [artBytes]. Used only if [artBytes] is null; Android only.
+  final String artFilePath;
+  final String artFlutterPath;
+  final String artUri;
 }
 
 /// Sends information to the OS's background audio system.
@@ -191,6 +203,15 @@ class AudioSystem {
       if (metadata.artBytes != null) {
         metadataMap[metadataArtBytesKey] = metadata.artBytes;
       }
+      if (metadata.artFilePath != null) {
+        metadataMap[metadataArtFilePathKey] = metadata.artFilePath;
+      }
+      if (metadata.artFlutterPath != null) {
+        metadataMap[metadataArtFlutterPathKey] = metadata.artFlutterPath;
+      }
+      if (metadata.artUri != null) {
+        metadataMap[metadataArtUriKey] = metadata.artUri;
+      }
 
       await audioMethodChannel.invokeMethod<dynamic>(
           setMetadataMethod, metadataMap);
@@ -3,6 +3,7 @@ import 'dart:typed_data';
 import 'dart:ui' show AppLifecycleState;
 
 import 'package:audiofileplayer/audio_system.dart';
+import 'package:audiofileplayer/binary_event_decoder.dart';
 import 'package:flutter/services.dart';
 import 'package:flutter/widgets.dart';
 import 'package:logging/logging.dart';
@@ -34,7 +35,27 @@ const String onDurationCallback = 'onDuration';
 const String durationSecondsKey = 'duration_seconds';
 const String onPositionCallback = 'onPosition';
 const String positionSecondsKey = 'position_seconds';
+const String onPositionsCallback = 'onPositions';
+const String audioIdsKey = 'audioIds';
+const String positionsSecondsKey = 'positions_seconds';
+const String setPositionReportingModeMethod = 'setPositionReportingMode';
+const String positionReportingModeKey = 'positionReportingMode';
+const String positionReportingPerPlayer = 'perPlayer';
+const String positionReportingBatched = 'batched';
+const String positionReportingAnchor = 'anchor';
+const String onPositionAnchorCallback = 'onPositionAnchor';
+const String anchorTimestampMsKey = 'anchor_timestamp_ms';
+const String playbackSpeedKey = 'playback_speed';
+const String onReadyCallback = 'onReady';
+const String onEvictedCallback = 'onEvicted';
+const String onPlaylistTransitionCallback = 'onPlaylistTransition';
+const String playlistIndexKey = 'playlistIndex';
 const String errorCode = 'AudioPluginError';
+const String eventsChannelName = 'audiofileplayer/events';
+const String setEventCodecMethod = 'setEventCodec';
+const String eventCodecKey = 'eventCodec';
+const String eventCodecStandard = 'standard';
+const String eventCodecBinary = 'binary';
 
 // Constants for [MediaActionType] and [AndroidMediaButtonType].
 const String onMediaEventCallback = 'onMediaEvent';
@@ -98,6 +119,51 @@ enum MediaActionType {
   custom
 }
 
+/// How the native layer reports playback positions to [Audio.onPosition]
+/// callbacks. See [Audio.setPositionReportingMode].
+enum PositionReportingMode {
+  /// One message per playing [Audio] on each position update (the default).
+  perPlayer,
+
+  /// One message per position update, holding the positions of all playing
+  /// [Audio]s.
+  batched,
+
+  /// No periodic updates. Instead, a position anchor is sent whenever playback
+  /// starts, stops, seeks, loops or changes speed, and [Audio.positionSeconds]
+  /// extrapolates the current position from it. [Audio.onPosition] callbacks
+  /// are called once per anchor.
+  anchor
+}
+
+/// Receives events sent in the binary codec; see [Audio.setEventCodec].
+const BasicMessageChannel<ByteData> audioEventChannel =
+    BasicMessageChannel<ByteData>(eventsChannelName, BinaryCodec());
+
+/// Decoder of [audioEventChannel], replaced whenever the binary codec is
+/// selected, since the native side then starts a new handle table.
+BinaryEventDecoder _binaryEventDecoder = BinaryEventDecoder();
+
+/// Dispatches the records of a binary event message as the method calls they
+/// stand for.
+Future<ByteData> _handleBinaryEvents(ByteData message) async {
+  for (final MethodCall call in _binaryEventDecoder.decode(message)) {
+    await Audio.handleMethodCall(call);
+  }
+  return null;
+}
+
+/// How the native layer encodes events such as position, duration and
+/// completion callbacks. See [Audio.setEventCodec].
+enum EventCodec {
+  /// Method calls on the plugin's method channel (the default).
+  standard,
+
+  /// Compact binary records on a separate message channel, which are cheaper
+  /// to encode and decode for high-frequency events such as positions.
+  binary
+}
+
 /// Represents events received from the OS's background audio system (e.g. iOS
 /// lockscreen/control center, bluetooth controllers, etc) and from Android
 /// buttons in the notification.
@@ -336,6 +402,28 @@ class Audio with WidgetsBindingObserver {
   /// Set while there is playback to a specified point.
   double _endpointSeconds;
 
+  /// Clock against which position anchors are extrapolated.
+  static final Stopwatch _anchorClock = Stopwatch()..start();
+
+  /// The latest position anchor, set in [PositionReportingMode.anchor].
+  double _anchorPositionSeconds;
+  double _anchorPlaybackSpeed = 0.0;
+  // Native timestamp of the anchor, to drop anchors which arrive out of order.
+  int _anchorTimestampMs;
+  // Time on [_anchorClock] at which the anchor was received.
+  int _anchorReceivedMs;
+
+  /// The current playback position, extrapolated from the latest position
+  /// anchor, or null if none has been received.
+  ///
+  /// Only set in [PositionReportingMode.anchor]; see
+  /// [setPositionReportingMode].
+  double get positionSeconds {
+    if (_anchorPositionSeconds == null) return null;
+    final int elapsedMs = _anchorClock.elapsedMilliseconds - _anchorReceivedMs;
+    return _anchorPositionSeconds + elapsedMs / 1000.0 * _anchorPlaybackSpeed;
+  }
+
   /// Creates an Audio from an asset.
   ///
   /// [path] should be a relative path to Flutter assets, e.g.
@@ -411,6 +499,43 @@ class Audio with WidgetsBindingObserver {
     return audio;
   }
 
+  /// Sets how the native layer reports playback positions.
+  ///
+  /// [PositionReportingMode.batched] sends a single message per update for all
+  /// playing audio, rather than one per [Audio], which is cheaper when many
+  /// [Audio]s play at once. Callbacks are called the same way in either mode.
+  ///
+  /// Android only.
+  static Future<void> setPositionReportingMode(
+      PositionReportingMode mode) async {
+    const Map<PositionReportingMode, String> modeToString =
+        <PositionReportingMode, String>{
+      PositionReportingMode.perPlayer: positionReportingPerPlayer,
+      PositionReportingMode.batched: positionReportingBatched,
+      PositionReportingMode.anchor: positionReportingAnchor,
+    };
+    await audioMethodChannel.invokeMethod<dynamic>(
+        setPositionReportingModeMethod,
+        <String, dynamic>{positionReportingModeKey: modeToString[mode]});
+  }
+
+  /// Sets how the native layer encodes events sent to Dart.
+  ///
+  /// Callbacks are called the same way with either codec.
+  ///
+  /// Android only.
+  static Future<void> setEventCodec(EventCodec codec) async {
+    if (codec == EventCodec.binary) {
+      _binaryEventDecoder = BinaryEventDecoder();
+      audioEventChannel.setMessageHandler(_handleBinaryEvents);
+    }
+    await audioMethodChannel.invokeMethod<dynamic>(
+        setEventCodecMethod, <String, dynamic>{
+      eventCodecKey:
+          codec == EventCodec.binary ? eventCodecBinary : eventCodecStandard
+    });
+  }
+
   /// Loads an asset.
   ///
   /// Keeps strong reference to this Audio (for channel callback routing)
@@ -726,6 +851,28 @@ class Audio with WidgetsBindingObserver {
     _usingOnPositionAudios[audioId]?._onPosition(positionSeconds);
   }
 
+  /// Handles callback from native layer, signifying that the way an [Audio]'s
+  /// position advances has changed.
+  ///
+  /// The anchor timestamp is on the native monotonic clock, so it is only
+  /// compared with earlier anchors; extrapolation starts from the time the
+  /// anchor is received.
+  static void _onPositionAnchorNative(String audioId, double positionSeconds,
+      int anchorTimestampMs, double playbackSpeed) {
+    final Audio audio = _undisposedAudios[audioId] ?? _playingAudios[audioId];
+    if (audio == null) return;
+    if (audio._anchorTimestampMs != null &&
+        anchorTimestampMs < audio._anchorTimestampMs) {
+      return;
+    }
+    audio
+      .._anchorPositionSeconds = positionSeconds
+      .._anchorPlaybackSpeed = playbackSpeed
+      .._anchorTimestampMs = anchorTimestampMs
+      .._anchorReceivedMs = _anchorClock.elapsedMilliseconds;
+    _usingOnPositionAudios[audioId]?._onPosition(positionSeconds);
+  }
+
   /// Release underlying audio assets.
   static Future<void> _releaseNative(String audioId) async {
     try {
@@ -775,9 +922,31 @@ class Audio with WidgetsBindingObserver {
         final double positionSeconds = arguments[positionSecondsKey];
         _onPositionNative(audioId, positionSeconds);
         break;
+      case onPositionsCallback:
+        // Parallel lists, holding the position of each playing audio.
+        final List<dynamic> audioIds = arguments[audioIdsKey];
+        final List<dynamic> positionsSeconds = arguments[positionsSecondsKey];
+        for (int i = 0; i < audioIds.length; i++) {
+          _onPositionNative(audioIds[i], positionsSeconds[i]);
+        }
+        break;
+      case onPositionAnchorCallback:
+        final double positionSeconds = arguments[positionSecondsKey];
+        final int anchorTimestampMs = arguments[anchorTimestampMsKey];
+        final double playbackSpeed = arguments[playbackSpeedKey];
+        _onPositionAnchorNative(
+            audioId, positionSeconds, anchorTimestampMs, playbackSpeed);
+        break;
       case onMediaEventCallback:
         AudioSystem.instance.handleNativeMediaEventCallback(arguments);
         break;
+      case onReadyCallback:
+      case onEvictedCallback:
+      case onPlaylistTransitionCallback:
+        // Only sent for the native load strategies, player eviction and
+        // playlists, which [Audio] does not use, so there is no state to
+        // update.
+        break;
       default:
         _logger.severe('Unknown method ${call.method}');
     }
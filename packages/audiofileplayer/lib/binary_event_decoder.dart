@@ -0,0 +1,145 @@
+import 'dart:convert';
+import 'dart:typed_data';
+
+import 'package:audiofileplayer/audiofileplayer.dart';
+import 'package:flutter/services.dart';
+import 'package:logging/logging.dart';
+
+final Logger _logger = Logger('audiofileplayer');
+
+// Record types, matching BinaryEventCodec in the Android plugin code.
+const int _handleRecord = 0;
+const int _positionRecord = 1;
+const int _positionsRecord = 2;
+const int _durationRecord = 3;
+const int _completeRecord = 4;
+const int _positionAnchorRecord = 5;
+const int _playlistTransitionRecord = 6;
+const int _mediaEventRecord = 7;
+const int _readyRecord = 8;
+const int _evictedRecord = 9;
+
+/// Decodes messages from the binary event channel into the [MethodCall]s the
+/// standard method channel would have carried, for [Audio.handleMethodCall].
+///
+/// Each message is a sequence of little-endian records, each starting with a
+/// one-byte type. Audio ids are sent once, as a handle record, and referred to
+/// by their int handle afterwards; this decoder keeps the handle table, so a
+/// new decoder must be used whenever the native side starts a new one (see
+/// [Audio.setEventCodec]).
+class BinaryEventDecoder {
+  final Map<int, String> _audioIds = <int, String>{};
+
+  /// Decodes all records of [message], in order.
+  List<MethodCall> decode(ByteData message) {
+    final List<MethodCall> calls = <MethodCall>[];
+    int offset = 0;
+    while (offset < message.lengthInBytes) {
+      final int type = message.getUint8(offset);
+      offset += 1;
+      switch (type) {
+        case _handleRecord:
+          final int handle = message.getInt32(offset, Endian.little);
+          final int length = message.getUint16(offset + 4, Endian.little);
+          _audioIds[handle] = _readString(message, offset + 6, length);
+          offset += 6 + length;
+          break;
+        case _positionRecord:
+          calls.add(MethodCall(onPositionCallback, <String, dynamic>{
+            audioIdKey: _audioId(message, offset),
+            positionSecondsKey: message.getFloat64(offset + 4, Endian.little)
+          }));
+          offset += 12;
+          break;
+        case _positionsRecord:
+          final int count = message.getUint16(offset, Endian.little);
+          offset += 2;
+          final List<String> audioIds = <String>[];
+          final Float64List positionsSeconds = Float64List(count);
+          for (int i = 0; i < count; i++) {
+            audioIds.add(_audioId(message, offset));
+            positionsSeconds[i] =
+                message.getFloat64(offset + 4, Endian.little);
+            offset += 12;
+          }
+          calls.add(MethodCall(onPositionsCallback, <String, dynamic>{
+            audioIdsKey: audioIds,
+            positionsSecondsKey: positionsSeconds
+          }));
+          break;
+        case _durationRecord:
+          calls.add(MethodCall(onDurationCallback, <String, dynamic>{
+            audioIdKey: _audioId(message, offset),
+            durationSecondsKey: message.getFloat64(offset + 4, Endian.little)
+          }));
+          offset += 12;
+          break;
+        case _completeRecord:
+          calls.add(MethodCall(onCompleteCallback,
+              <String, dynamic>{audioIdKey: _audioId(message, offset)}));
+          offset += 4;
+          break;
+        case _positionAnchorRecord:
+          calls.add(MethodCall(onPositionAnchorCallback, <String, dynamic>{
+            audioIdKey: _audioId(message, offset),
+            positionSecondsKey: message.getFloat64(offset + 4, Endian.little),
+            anchorTimestampMsKey: message.getInt64(offset + 12, Endian.little),
+            playbackSpeedKey: message.getFloat64(offset + 20, Endian.little)
+          }));
+          offset += 28;
+          break;
+        case _playlistTransitionRecord:
+          calls.add(MethodCall(onPlaylistTransitionCallback, <String, dynamic>{
+            audioIdKey: _audioId(message, offset),
+            playlistIndexKey: message.getInt32(offset + 4, Endian.little)
+          }));
+          offset += 8;
+          break;
+        case _mediaEventRecord:
+          final int typeLength = message.getUint16(offset, Endian.little);
+          final String mediaEventType =
+              _readString(message, offset + 2, typeLength);
+          offset += 2 + typeLength;
+          final double seekPositionSeconds =
+              message.getFloat64(offset, Endian.little);
+          final int customLength = message.getUint16(offset + 8, Endian.little);
+          final String customEventId =
+              _readString(message, offset + 10, customLength);
+          offset += 10 + customLength;
+          final Map<String, dynamic> arguments = <String, dynamic>{
+            mediaEventTypeKey: mediaEventType
+          };
+          if (!seekPositionSeconds.isNaN) {
+            arguments[mediaSeekToPositionSecondsKey] = seekPositionSeconds;
+          }
+          if (customEventId.isNotEmpty) {
+            arguments[mediaCustomEventIdKey] = customEventId;
+          }
+          calls.add(MethodCall(onMediaEventCallback, arguments));
+          break;
+        case _readyRecord:
+          calls.add(MethodCall(onReadyCallback,
+              <String, dynamic>{audioIdKey: _audioId(message, offset)}));
+          offset += 4;
+          break;
+        case _evictedRecord:
+          calls.add(MethodCall(onEvictedCallback,
+              <String, dynamic>{audioIdKey: _audioId(message, offset)}));
+          offset += 4;
+          break;
+        default:
+          // Record lengths depend on their type, so the rest is unreadable.
+          _logger.severe('Unknown binary event record type $type');
+          return calls;
+      }
+    }
+    return calls;
+  }
+
+  String _audioId(ByteData message, int offset) =>
+      _audioIds[message.getInt32(offset, Endian.little)];
+
+  static String _readString(ByteData message, int offset, int length) =>
+      utf8.decode(Uint8List.view(
+          message.buffer, message.offsetInBytes + offset, length));
+}
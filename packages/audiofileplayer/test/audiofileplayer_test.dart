@@ -1,9 +1,12 @@
+import 'dart:async';
+import 'dart:typed_data';
 import 'dart:ui' show AppLifecycleState;
 
 import 'package:flutter/services.dart';
 import 'package:flutter/widgets.dart' show WidgetsFlutterBinding;
 import 'package:flutter_test/flutter_test.dart';
 import 'package:audiofileplayer/audiofileplayer.dart';
+import 'package:logging/logging.dart';
 
 const double _defaultPositionSeconds = 5.0;
 const double _defaultDurationSeconds = 10.0;
@@ -171,6 +174,86 @@ void main() {
       expect(methodCalls[2].method, releaseMethod);
     });
 
+    test('batched positions are dispatched to each audio', () {
+      double position1;
+      double position2;
+      Audio.load('foo.wav', onPosition: (double p) => position1 = p)
+        ..play()
+        ..dispose();
+      Audio.load('bar.wav', onPosition: (double p) => position2 = p)
+        ..play()
+        ..dispose();
+      expect(Audio.usingOnPositionAudiosCount, 2);
+      final String audioId1 = methodCalls[0].arguments[audioIdKey];
+      final String audioId2 = methodCalls[2].arguments[audioIdKey];
+
+      Audio.handleMethodCall(MethodCall(onPositionsCallback, <String, dynamic>{
+        audioIdsKey: <String>[audioId1, audioId2],
+        positionsSecondsKey: Float64List.fromList(<double>[1.0, 2.0])
+      }));
+      expect(position1, 1.0);
+      expect(position2, 2.0);
+
+      _mockOnCompleteCall(audioId1);
+      _mockOnCompleteCall(audioId2);
+      expect(Audio.usingOnPositionAudiosCount, 0);
+    });
+
+    test('position anchors are reported and extrapolated', () {
+      double position;
+      final Audio audio =
+          Audio.load('foo.wav', onPosition: (double p) => position = p)
+            ..play();
+      expect(audio.positionSeconds, null);
+      final String audioId = methodCalls[0].arguments[audioIdKey];
+
+      Future<void> mockAnchor(
+              double positionSeconds, int timestampMs, double speed) =>
+          Audio.handleMethodCall(
+              MethodCall(onPositionAnchorCallback, <String, dynamic>{
+            audioIdKey: audioId,
+            positionSecondsKey: positionSeconds,
+            anchorTimestampMsKey: timestampMs,
+            playbackSpeedKey: speed
+          }));
+
+      // A paused anchor does not advance.
+      mockAnchor(_defaultPositionSeconds, 1000, 0.0);
+      expect(position, _defaultPositionSeconds);
+      expect(audio.positionSeconds, _defaultPositionSeconds);
+
+      // A playing anchor advances from the anchor position.
+      mockAnchor(_defaultPositionSeconds, 2000, 1.0);
+      expect(audio.positionSeconds,
+          greaterThanOrEqualTo(_defaultPositionSeconds));
+
+      // An anchor older than the latest one is dropped.
+      mockAnchor(0.0, 1500, 0.0);
+      expect(position, _defaultPositionSeconds);
+      expect(audio.positionSeconds,
+          greaterThanOrEqualTo(_defaultPositionSeconds));
+
+      _mockOnCompleteCall(audioId);
+      audio.dispose();
+    });
+
+    test('native-only events are handled without errors', () async {
+      final List<LogRecord> severeRecords = <LogRecord>[];
+      final StreamSubscription<LogRecord> subscription = Logger.root.onRecord
+          .where((LogRecord record) => record.level >= Level.SEVERE)
+          .listen(severeRecords.add);
+
+      await Audio.handleMethodCall(
+          MethodCall(onReadyCallback, <String, dynamic>{audioIdKey: 'a'}));
+      await Audio.handleMethodCall(
+          MethodCall(onEvictedCallback, <String, dynamic>{audioIdKey: 'a'}));
+      await Audio.handleMethodCall(MethodCall(onPlaylistTransitionCallback,
+          <String, dynamic>{audioIdKey: 'a', playlistIndexKey: 1}));
+      await subscription.cancel();
+
+      expect(severeRecords, isEmpty);
+    });
+
     test('remove callbacks', () {
       bool onCompleteCalled = false;
       double duration;
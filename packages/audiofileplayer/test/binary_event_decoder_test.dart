@@ -0,0 +1,157 @@
+import 'dart:convert';
+import 'dart:typed_data';
+
+import 'package:audiofileplayer/audiofileplayer.dart';
+import 'package:audiofileplayer/binary_event_decoder.dart';
+import 'package:flutter/services.dart';
+import 'package:flutter_test/flutter_test.dart';
+
+/// Writes records in the layout of the Android plugin's BinaryEventCodec.
+class _RecordWriter {
+  final List<int> _bytes = <int>[];
+
+  void handle(int handle, String audioId) {
+    final List<int> name = utf8.encode(audioId);
+    _byte(0);
+    _int32(handle);
+    _uint16(name.length);
+    _bytes.addAll(name);
+  }
+
+  void position(int handle, double positionSeconds) {
+    _byte(1);
+    _int32(handle);
+    _float64(positionSeconds);
+  }
+
+  void positions(List<int> handles, List<double> positionsSeconds) {
+    _byte(2);
+    _uint16(handles.length);
+    for (int i = 0; i < handles.length; i++) {
+      _int32(handles[i]);
+      _float64(positionsSeconds[i]);
+    }
+  }
+
+  void complete(int handle) {
+    _byte(4);
+    _int32(handle);
+  }
+
+  void positionAnchor(
+      int handle, double positionSeconds, int timestampMs, double speed) {
+    _byte(5);
+    _int32(handle);
+    _float64(positionSeconds);
+    _add(ByteData(8)..setInt64(0, timestampMs, Endian.little));
+    _float64(speed);
+  }
+
+  void mediaEvent(String type, double seekPositionSeconds, String customId) {
+    final List<int> typeBytes = utf8.encode(type);
+    final List<int> customBytes = utf8.encode(customId);
+    _byte(7);
+    _uint16(typeBytes.length);
+    _bytes.addAll(typeBytes);
+    _float64(seekPositionSeconds);
+    _uint16(customBytes.length);
+    _bytes.addAll(customBytes);
+  }
+
+  ByteData build() => ByteData.view(Uint8List.fromList(_bytes).buffer);
+
+  void _byte(int value) => _bytes.add(value);
+
+  void _uint16(int value) =>
+      _add(ByteData(2)..setUint16(0, value, Endian.little));
+
+  void _int32(int value) =>
+      _add(ByteData(4)..setInt32(0, value, Endian.little));
+
+  void _float64(double value) =>
+      _add(ByteData(8)..setFloat64(0, value, Endian.little));
+
+  void _add(ByteData data) => _bytes.addAll(data.buffer.asUint8List());
+}
+
+void main() {
+  group('$BinaryEventDecoder', () {
+    test('decodes handles once and refers to them afterwards', () {
+      final BinaryEventDecoder decoder = BinaryEventDecoder();
+      final List<MethodCall> first = decoder.decode((_RecordWriter()
+            ..handle(0, 'a')
+            ..position(0, 1.5))
+          .build());
+      final List<MethodCall> second =
+          decoder.decode((_RecordWriter()..complete(0)).build());
+
+      expect(first.length, 1);
+      expect(first[0].method, onPositionCallback);
+      expect(first[0].arguments[audioIdKey], 'a');
+      expect(first[0].arguments[positionSecondsKey], 1.5);
+      expect(second.length, 1);
+      expect(second[0].method, onCompleteCallback);
+      expect(second[0].arguments[audioIdKey], 'a');
+    });
+
+    test('decodes batched positions', () {
+      final List<MethodCall> calls =
+          BinaryEventDecoder().decode((_RecordWriter()
+            ..handle(0, 'a')
+            ..handle(1, 'b')
+            ..positions(<int>[0, 1], <double>[1.0, 2.0]))
+          .build());
+
+      expect(calls.length, 1);
+      expect(calls[0].method, onPositionsCallback);
+      expect(calls[0].arguments[audioIdsKey], <String>['a', 'b']);
+      expect(calls[0].arguments[positionsSecondsKey], <double>[1.0, 2.0]);
+    });
+
+    test('decodes position anchors', () {
+      final List<MethodCall> calls =
+          BinaryEventDecoder().decode((_RecordWriter()
+            ..handle(3, 'a')
+            ..positionAnchor(3, 4.0, 123456789012, 1.0))
+          .build());
+
+      expect(calls.length, 1);
+      expect(calls[0].method, onPositionAnchorCallback);
+      expect(calls[0].arguments[audioIdKey], 'a');
+      expect(calls[0].arguments[positionSecondsKey], 4.0);
+      expect(calls[0].arguments[anchorTimestampMsKey], 123456789012);
+      expect(calls[0].arguments[playbackSpeedKey], 1.0);
+    });
+
+    test('decodes media events, omitting unset fields', () {
+      final List<MethodCall> calls =
+          BinaryEventDecoder().decode((_RecordWriter()
+            ..mediaEvent(mediaSeekTo, 3.0, '')
+            ..mediaEvent(mediaCustom, double.nan, 'like'))
+          .build());
+
+      expect(calls.length, 2);
+      expect(calls[0].method, onMediaEventCallback);
+      expect(calls[0].arguments, <String, dynamic>{
+        mediaEventTypeKey: mediaSeekTo,
+        mediaSeekToPositionSecondsKey: 3.0
+      });
+      expect(calls[1].arguments, <String, dynamic>{
+        mediaEventTypeKey: mediaCustom,
+        mediaCustomEventIdKey: 'like'
+      });
+    });
+
+    test('stops at an unknown record type', () {
+      final List<MethodCall> calls =
+          BinaryEventDecoder().decode((_RecordWriter()
+            ..handle(0, 'a')
+            ..complete(0)
+            .._byte(99)
+            ..complete(0))
+          .build());
+
+      expect(calls.length, 1);
+    });
+  });
+}